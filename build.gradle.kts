@@ -34,6 +34,8 @@ dependencies {
     }
 
     testImplementation(libs.junit)
+    // the IntelliJ Platform test framework throws opentest4j assertion errors, but does not bring the library
+    testImplementation(libs.opentest4j)
 
     intellijPlatform {
         // https://plugins.jetbrains.com/docs/intellij/tools-intellij-platform-gradle-plugin.html#setting-up-intellij-platform
@@ -11,7 +11,10 @@ public enum ConfigOption {
     TARGET_JDK("Target JDK", "Target Java version (max: " + latestSupportLanguageVersionByPmd("java") + ")", latestSupportLanguageVersionByPmd("java")),
     TARGET_KOTLIN_VERSION("Target Kotlin version", "Target Kotlin version (max: " + latestSupportLanguageVersionByPmd("kotlin") + ")", latestSupportLanguageVersionByPmd("kotlin")),
     STATISTICS_URL("Statistics URL", "Statistics URL to export usage anonymously", ""),
-    THREADS("Threads", "Threads (fastest: " + PMDUtil.AVAILABLE_PROCESSORS + ")", String.valueOf(PMDUtil.AVAILABLE_PROCESSORS));
+    THREADS("Threads", "Threads (fastest: " + PMDUtil.AVAILABLE_PROCESSORS + ")", String.valueOf(PMDUtil.AVAILABLE_PROCESSORS)),
+    THREAD_PROFILE("Thread profile", "Thread profile: adaptive, background (max half the threads) or fixed", "adaptive"),
+    BATCH_SIZE("Batch size", "Max files analyzed per batch (0: no limit)", "1000"),
+    ANNOTATION_DELAY("Annotation delay", "Min idle time in ms before the editor is analyzed", "0");
 
     /**
      * key is used for persisting
@@ -11,7 +11,6 @@ import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectRootManager;
-import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileFilter;
@@ -20,15 +19,11 @@ import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.plugins.bodhi.pmd.core.PMDProgressRenderer;
 import com.intellij.plugins.bodhi.pmd.core.PMDResultCollector;
 import com.intellij.plugins.bodhi.pmd.tree.PMDRootNode;
-import com.intellij.plugins.bodhi.pmd.tree.PMDRuleSetEntryNode;
-import com.intellij.plugins.bodhi.pmd.tree.PMDRuleSetNode;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiManager;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
@@ -89,7 +84,7 @@ public class PMDInvoker {
         PMDResultPanel resultPanel = projectComponent.getResultPanel();
         PMDRootNode rootNode = resultPanel.getRootNode();
 
-        List<VirtualFile> files = new LinkedList<>();
+        List<VirtualFile> files = new ArrayList<>();
         if (actionEvent.getPlace().equals(ActionPlaces.PROJECT_VIEW_POPUP)
                 || actionEvent.getPlace().equals(ActionPlaces.SCOPE_VIEW_POPUP)
                 || actionEvent.getPlace().equals(ActionPlaces.CHANGES_VIEW_POPUP)
@@ -159,66 +154,35 @@ public class PMDInvoker {
                 ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
                 progress.setIndeterminate(false);
 
-                String[] ruleSetPathArray = ruleSetPaths.split(RULE_DELIMITER);
+                List<String> ruleSetPathList = List.of(ruleSetPaths.split(RULE_DELIMITER));
                 PMDResultPanel resultPanel = projectComponent.getResultPanel();
 
                 System.setProperty("pmd.error_recovery", "true"); //Recover from errors on single files
                 PMDRootNode rootNode = resultPanel.getRootNode();
                 resultPanel.createProcessingErrorNode();
                 rootNode.setFileCount(files.size());
-                rootNode.setRuleSetCount(ruleSetPathArray.length);
+                rootNode.setRuleSetCount(ruleSetPathList.size());
                 rootNode.setRunning(true);
 
-                PMDProgressRenderer progressRenderer = new PMDProgressRenderer(progress, files.size() * ruleSetPathArray.length);
+                PMDProgressRenderer progressRenderer = new PMDProgressRenderer(progress, files.size());
                 try {
-                    final PsiManager psiManager = PsiManager.getInstance(project);
-
-                    for (String ruleSetPath : ruleSetPathArray) {
-                        progress.setText("Running : " + ruleSetPath + " on " + files.size() + " file(s)");
-
-                        //Create a result collector to get results
-                        PMDResultCollector collector = new PMDResultCollector();
-
-                        //Get the tree nodes from result collector
-                        List<PMDRuleSetEntryNode> resultRuleNodes = collector.runPMDAndGetResults(
-                                ApplicationManager.getApplication().runReadAction(new Computable<>() {
-                                    @Override
-                                    public List<PsiFile> compute() {
-                                        return files.stream()
-                                                .map(psiManager::findFile)
-                                                .toList();
-                                    }
-                                }),
-                                ruleSetPath,
-                                projectComponent,
-                                progressRenderer);
-                        // sort rules by priority, rule and suppressed nodes are comparable
-                        resultRuleNodes.sort(null);
-
-                        if (!resultRuleNodes.isEmpty()) {
-                            String ruleSetName = PMDUtil.getBareFileNameFromPath(ruleSetPath);
-                            String desc = PMDResultCollector.getRuleSetDescription(ruleSetPath);
-                            PMDRuleSetNode ruleSetNode = resultPanel.addCreateRuleSetNodeAtRoot(ruleSetName);
-                            ruleSetNode.setToolTip(desc);
-                            //Add all rule nodes to the tree
-                            for (PMDRuleSetEntryNode resultRuleNode : resultRuleNodes) {
-                                resultPanel.addNode(ruleSetNode, resultRuleNode);
-                            }
-                            rootNode.calculateCounts();
-                            resultPanel.reloadResultTree();
-                        }
-                        if (progress.isCanceled()) {
-                            break;
-                        }
-                    }
-                    resultPanel.addProcessingErrorsNodeToRootIfHasAny(); // as last node
-                    rootNode.calculateCounts();
+                    progress.setText("Running : " + String.join(", ", ruleSetPathList) + " on " + files.size() + " file(s)");
+
+                    //Create a result collector to get results
+                    PMDResultCollector collector = new PMDResultCollector();
+
+                    //Analyze all files once for all rule sets, in batches to bound the memory use, the result tree
+                    //shows the violations as files finish
+                    collector.runPMDAndShowResults(files, ruleSetPathList, projectComponent, progressRenderer);
+                    // a cancel stops the analysis per file, the results of the files analyzed so far are shown
+                    rootNode.setCanceled(progress.isCanceled());
                 } catch (Throwable t) {
                     rootNode.setRuleSetErrorMsg(t.getMessage());
                     log.error("Error running PMD", t);
                 } finally {
                     rootNode.setRunning(false);
-                    resultPanel.reloadResultTree();
+                    // only refresh the root node, a reload would collapse the nodes expanded while running
+                    ApplicationManager.getApplication().invokeLater(() -> resultPanel.nodeChanged(rootNode));
                 }
             }
         });
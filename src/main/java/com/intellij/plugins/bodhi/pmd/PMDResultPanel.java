@@ -9,14 +9,20 @@ import com.intellij.openapi.command.CommandProcessor;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.ex.EditorEx;
 import com.intellij.openapi.editor.highlighter.EditorHighlighterFactory;
+import com.intellij.openapi.fileChooser.FileChooserFactory;
+import com.intellij.openapi.fileChooser.FileSaverDescriptor;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileWrapper;
 import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.plugins.bodhi.pmd.actions.AnEDTAction;
@@ -32,21 +38,21 @@ import com.intellij.usageView.UsageViewBundle;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.tree.TreeUtil;
 import net.sourceforge.pmd.lang.rule.Rule;
-import net.sourceforge.pmd.renderers.HTMLRenderer;
-import net.sourceforge.pmd.reporting.Report;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import javax.swing.event.ChangeListener;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreeNode;
 import javax.swing.tree.TreePath;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.io.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -418,6 +424,8 @@ public class PMDResultPanel extends JPanel implements HTMLReloadable {
      * 5. Next
      * 6. Prev
      * 7. Autoscroll to source.
+     * 8. Export
+     * 9. Clear analysis cache
      *
      * @return The group containing all actions required for the toolbar.
      */
@@ -498,42 +506,8 @@ public class PMDResultPanel extends JPanel implements HTMLReloadable {
                         scrolling = state;
                     }
                 }));
-        actionGroup.add(CommonActionsManager.getInstance().createExportToTextFileAction(new ExporterToTextFile() {
-            public JComponent getSettingsEditor() {
-                return null;
-            }
-
-            public void addSettingsChangedListener(ChangeListener listener) {
-            }
-
-            public void removeSettingsChangedListener(ChangeListener listener) {
-            }
-
-            public @NotNull String getReportText() {
-                Report r = PMDResultCollector.getReport();
-                HTMLRenderer renderer = new HTMLRenderer();
-                StringWriter w = new StringWriter();
-                try {
-                    renderer.renderBody(new PrintWriter(w), r);
-                    return w.getBuffer().toString();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                return "";
-            }
-
-            @NotNull
-            public String getDefaultFilePath() {
-                return "report.html";
-            }
-
-            public void exportedTo(@NotNull String filePath) {
-            }
-
-            public boolean canExport() {
-                return true;
-            }
-        }));
+        actionGroup.add(new ExportAction());
+        actionGroup.add(new ClearCacheAction());
         return actionGroup;
     }
 
@@ -615,6 +589,26 @@ public class PMDResultPanel extends JPanel implements HTMLReloadable {
         ApplicationManager.getApplication().invokeLater(() -> ((DefaultTreeModel) resultTree.getModel()).reload());
     }
 
+    /**
+     * Notifies the tree of child nodes inserted in the parent node, without reloading the tree, so expanded and
+     * selected nodes stay as they are. Must be called on the event dispatch thread.
+     *
+     * @param parent the parent node
+     * @param childIndices the indices of the inserted child nodes, in ascending order
+     */
+    public void nodesWereInserted(TreeNode parent, int[] childIndices) {
+        ((DefaultTreeModel) resultTree.getModel()).nodesWereInserted(parent, childIndices);
+    }
+
+    /**
+     * Notifies the tree that the node changed, like its counts. Must be called on the event dispatch thread.
+     *
+     * @param node the changed node
+     */
+    public void nodeChanged(TreeNode node) {
+        ((DefaultTreeModel) resultTree.getModel()).nodeChanged(node);
+    }
+
     /**
      * Get the root node of the violation tree.
      *
@@ -643,10 +637,12 @@ public class PMDResultPanel extends JPanel implements HTMLReloadable {
 
     /**
      * Add the leaf node containing the processing errors to the root node, only if it has > 0 leaf nodes.
+     * Must be called on the event dispatch thread.
      */
     public void addProcessingErrorsNodeToRootIfHasAny() {
-        if (processingErrorsNode.getChildCount() > 0) {
+        if (processingErrorsNode.getChildCount() > 0 && processingErrorsNode.getParent() == null) {
             rootNode.add(processingErrorsNode);
+            nodesWereInserted(rootNode, new int[]{rootNode.getIndex(processingErrorsNode)});
         }
     }
 
@@ -696,4 +692,62 @@ public class PMDResultPanel extends JPanel implements HTMLReloadable {
         }
     }
 
+    /**
+     * Inner class for the action which exports the shown results to an HTML, JSON or XML file.
+     */
+    private class ExportAction extends AnEDTAction {
+        private ExportAction() {
+            super("Export", "Export the shown PMD results as HTML, JSON or XML", AllIcons.ToolbarDecorator.Export);
+        }
+
+        public void actionPerformed(AnActionEvent e) {
+            Project project = e.getData(PlatformDataKeys.PROJECT);
+            if (project == null) {
+                return;
+            }
+            FileSaverDescriptor descriptor = new FileSaverDescriptor("Export PMD Results",
+                    "Export the PMD results as HTML, JSON or XML", PMDResultExporter.EXTENSIONS);
+            VirtualFileWrapper fileWrapper = FileChooserFactory.getInstance().createSaveFileDialog(descriptor, project)
+                    .save((Path) null, "report.html");
+            if (fileWrapper == null) {
+                return;
+            }
+            Path file = fileWrapper.getFile().toPath();
+            // collect on the EDT, the file is written in the background
+            PMDResultExporter exporter = PMDResultExporter.fromTree(rootNode);
+            new Task.Backgroundable(project, "Exporting PMD results", false) {
+                @Override
+                public void run(@NotNull ProgressIndicator indicator) {
+                    try {
+                        exporter.exportTo(file);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+
+                @Override
+                public void onThrowable(@NotNull Throwable error) {
+                    Messages.showErrorDialog(project, "Could not export the PMD results to " + file + ": " + error.getMessage(), "Export PMD Results");
+                }
+            }.queue();
+        }
+    }
+
+    /**
+     * Inner class for the action which clears the persistent PMD analysis cache of the project.
+     */
+    private static class ClearCacheAction extends AnEDTAction {
+        private ClearCacheAction() {
+            super("Clear Analysis Cache", "Delete the PMD analysis cache of this project, the next run analyzes all files again", AllIcons.Actions.GC);
+        }
+
+        public void actionPerformed(AnActionEvent e) {
+            Project project = e.getData(PlatformDataKeys.PROJECT);
+            if (project != null) {
+                PMDScanResultStore.getInstance(project).clear();
+                ApplicationManager.getApplication().executeOnPooledThread(() -> PMDProjectCacheFile.clear(project));
+            }
+        }
+    }
+
 }
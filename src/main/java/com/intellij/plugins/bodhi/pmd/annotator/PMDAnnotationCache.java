@@ -0,0 +1,56 @@
+package com.intellij.plugins.bodhi.pmd.annotator;
+
+import com.intellij.openapi.editor.Document;
+import net.sourceforge.pmd.reporting.Report;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the report of the last in-editor analysis per document, so the analysis is not repeated when highlighting
+ * is restarted for an unchanged document, like on a focus switch. A report is only valid for the modification stamp
+ * of the document it was created for, and for the same analysis configuration: the rule sets, the settings and the
+ * language version. Documents are weakly referenced, so the reports of closed files can be collected.
+ */
+final class PMDAnnotationCache {
+
+    private static final Map<Document, Entry> documentToEntry = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private PMDAnnotationCache() {
+    }
+
+    /**
+     * Returns the cached report of the document, or null when the document changed since it was analyzed or the
+     * configuration is different.
+     *
+     * @param document the document to annotate
+     * @param modificationStamp the modification stamp of the document
+     * @param configurationKey identifies the analysis configuration
+     * @return the cached report, or null
+     */
+    static @Nullable Report get(Document document, long modificationStamp, String configurationKey) {
+        Entry entry = documentToEntry.get(document);
+        return (entry != null && entry.modificationStamp() == modificationStamp
+                && entry.configurationKey().equals(configurationKey)) ? entry.report() : null;
+    }
+
+    /**
+     * Keeps the report of the analysis of the document, replacing any earlier report.
+     *
+     * @param document the analyzed document
+     * @param modificationStamp the modification stamp of the analyzed content
+     * @param configurationKey identifies the analysis configuration
+     * @param report the report of the analysis
+     */
+    static void put(Document document, long modificationStamp, String configurationKey, Report report) {
+        documentToEntry.put(document, new Entry(modificationStamp, configurationKey, report));
+    }
+
+    /**
+     * The report of an analysis, which must not refer to the document, as it would not be collected.
+     */
+    private record Entry(long modificationStamp, String configurationKey, Report report) {
+    }
+}
@@ -0,0 +1,197 @@
+package com.intellij.plugins.bodhi.pmd.annotator;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.SensitiveProgressWrapper;
+import com.intellij.openapi.util.Computable;
+import com.intellij.util.ConcurrencyUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the in-editor analyses of a document, only the latest requested analysis of a document runs to completion.
+ * A request first waits for the min idle delay, so a burst of requests while typing is coalesced into the last one.
+ * A request for changed content or another configuration cancels the request of the same document which is waiting
+ * or running, the running analysis stops mid-flight before its next rule. A request for the same content and
+ * configuration, like from a second editor of the document, shares the result of the running request instead, and
+ * runs itself when that request is canceled. An analysis is also canceled with the highlighting pass it runs for.
+ * <p>
+ * A low priority analysis, like while the IDE is indexing, runs in a thread of the queue at minimum priority while
+ * the highlighting thread waits for it, so the priority of the highlighting threads is not changed.
+ */
+final class PMDAnnotationQueue {
+
+    /**
+     * interval to check for cancellation while waiting
+     */
+    private static final int POLL_MS = 20;
+
+    private static final Map<Document, Request> documentToLatest = new WeakHashMap<>(); // guarded by itself
+
+    /**
+     * runs the low priority analyses, its thread ends when idle
+     */
+    private static final ExecutorService lowPriorityExecutor = new ThreadPoolExecutor(0, 1, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), ConcurrencyUtil.newNamedThreadFactory("PMD Low Priority Annotator", true, Thread.MIN_PRIORITY));
+
+    private PMDAnnotationQueue() {
+    }
+
+    /**
+     * Runs the analysis of the document after the delay, unless a newer request for the document comes in first.
+     *
+     * @param document the document to analyze
+     * @param modificationStamp the modification stamp of the document to analyze
+     * @param configurationKey identifies the analysis configuration
+     * @param minDelayMs the min time in ms to wait before the analysis starts
+     * @param lowPriority whether to run the analysis in a thread of minimum priority
+     * @param analysis the analysis, which runs with a progress indicator which is canceled when superseded
+     * @return the result of the analysis
+     * @throws ProcessCanceledException when the request is superseded or the highlighting pass is canceled
+     */
+    static <T> T run(Document document, long modificationStamp, String configurationKey, int minDelayMs,
+                     boolean lowPriority, Computable<T> analysis) {
+        ProgressIndicator parent = ProgressManager.getInstance().getProgressIndicator();
+        while (true) {
+            Request running;
+            Request request = null;
+            synchronized (documentToLatest) {
+                running = documentToLatest.get(document);
+                if (running == null || !running.isFor(modificationStamp, configurationKey) || running.indicator.isCanceled()) {
+                    request = new Request(modificationStamp, configurationKey,
+                            (parent != null) ? new SensitiveProgressWrapper(parent) : new EmptyProgressIndicator());
+                    documentToLatest.put(document, request);
+                }
+            }
+            if (request != null) {
+                if (running != null) {
+                    running.indicator.cancel();
+                }
+                return run(document, request, minDelayMs, lowPriority, analysis);
+            }
+            T shared = awaitResult(running, parent);
+            if (shared != null) {
+                return shared;
+            }
+            // the shared request was canceled or failed, run again
+        }
+    }
+
+    private static <T> T run(Document document, Request request, int minDelayMs, boolean lowPriority, Computable<T> analysis) {
+        try {
+            waitForDelay(request.indicator, minDelayMs);
+            T result = lowPriority
+                    ? runAtLowPriority(analysis, request.indicator)
+                    : ProgressManager.getInstance().runProcess(analysis, request.indicator);
+            // the analysis returns normally when canceled, with incomplete results
+            request.indicator.checkCanceled();
+            request.result.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            request.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (documentToLatest) {
+                documentToLatest.remove(document, request);
+            }
+        }
+    }
+
+    /**
+     * Waits for the result of the running request, as long as the own highlighting pass is not canceled.
+     *
+     * @return the result, or null when the request did not complete normally
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> @Nullable T awaitResult(Request running, @Nullable ProgressIndicator parent) {
+        while (true) {
+            if (parent != null) {
+                parent.checkCanceled();
+            }
+            try {
+                return (T) running.result.get(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // check for cancellation again
+            } catch (ExecutionException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            }
+        }
+    }
+
+    /**
+     * Runs the analysis in the low priority thread and waits for its result, as long as the indicator is not
+     * canceled. A canceled analysis stops by itself, as it runs with the same indicator.
+     */
+    private static <T> T runAtLowPriority(Computable<T> analysis, ProgressIndicator indicator) {
+        Future<T> future = lowPriorityExecutor.submit(() -> ProgressManager.getInstance().runProcess(analysis, indicator));
+        while (true) {
+            indicator.checkCanceled();
+            try {
+                return future.get(POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // check for cancellation again
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            }
+        }
+    }
+
+    private static void waitForDelay(ProgressIndicator indicator, int delayMs) {
+        long deadline = System.currentTimeMillis() + delayMs;
+        for (long remaining = delayMs; remaining > 0; remaining = deadline - System.currentTimeMillis()) {
+            indicator.checkCanceled();
+            try {
+                Thread.sleep(Math.min(POLL_MS, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            }
+        }
+        indicator.checkCanceled();
+    }
+
+    /**
+     * A request to analyze a document, with the result it completes with.
+     */
+    private static final class Request {
+        private final long modificationStamp;
+        private final String configurationKey;
+        private final ProgressIndicator indicator;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Request(long modificationStamp, String configurationKey, ProgressIndicator indicator) {
+            this.modificationStamp = modificationStamp;
+            this.configurationKey = configurationKey;
+            this.indicator = indicator;
+        }
+
+        boolean isFor(long modificationStamp, String configurationKey) {
+            return this.modificationStamp == modificationStamp && this.configurationKey.equals(configurationKey);
+        }
+    }
+}
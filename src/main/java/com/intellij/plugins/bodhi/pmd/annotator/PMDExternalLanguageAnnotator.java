@@ -12,28 +12,43 @@ import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.DefaultProjectFactory;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.plugins.bodhi.pmd.ConfigOption;
 import com.intellij.plugins.bodhi.pmd.PMDProjectComponent;
 import com.intellij.plugins.bodhi.pmd.annotator.langversion.ManagedLanguageVersionResolver;
+import com.intellij.plugins.bodhi.pmd.core.PMDClasspathService;
+import com.intellij.plugins.bodhi.pmd.core.PMDFileResult;
 import com.intellij.plugins.bodhi.pmd.core.PMDResultCollector;
+import com.intellij.plugins.bodhi.pmd.core.RuleKey;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.webSymbols.utils.HtmlMarkdownUtils;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.reporting.Report;
 import net.sourceforge.pmd.reporting.RuleViolation;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Display PMD violations in the editor and in the problem view
+ * Display PMD violations in the editor and in the problem view. It also annotates while the IDE is indexing, the
+ * file is then analyzed at low priority.
  */
-public abstract class PMDExternalLanguageAnnotator extends ExternalAnnotator<FileInfo, PMDAnnotations> {
+public abstract class PMDExternalLanguageAnnotator extends ExternalAnnotator<FileInfo, PMDAnnotations> implements DumbAware {
+
+    private static final Map<RuleKey, String> ruleToDescriptionHtml = new ConcurrentHashMap<>();
+
+    static {
+        PMDResultCollector.addRuleSetInvalidationListener(ruleToDescriptionHtml::clear);
+    }
 
     protected final Language language;
     protected final Logger logger;
@@ -55,36 +70,85 @@ public abstract class PMDExternalLanguageAnnotator extends ExternalAnnotator<Fil
     public @Nullable PMDAnnotations doAnnotate(FileInfo info) {
         PMDProjectComponent projectComponent = info.getProject().getService(PMDProjectComponent.class);
 
-        Set<String> inEditorAnnotationActiveRuleSets = projectComponent.getInEditorAnnotationRuleSets().stream()
+        List<String> inEditorAnnotationActiveRuleSets = projectComponent.getInEditorAnnotationRuleSets().stream()
                 .filter(ruleSetPath -> isRuleSetForGivenFile(info, ruleSetPath))
-                .collect(Collectors.toSet());
+                .toList();
 
         if (inEditorAnnotationActiveRuleSets.isEmpty()) {
             return null;
         }
 
+        // an unchanged document keeps the annotations of its last analysis with the same configuration
+        Document document = info.document();
+        long modificationStamp = document.getModificationStamp();
+        String configurationKey = getConfigurationKey(info, inEditorAnnotationActiveRuleSets, projectComponent);
+        Report cachedReport = PMDAnnotationCache.get(document, modificationStamp, configurationKey);
+        if (cachedReport != null) {
+            return new PMDAnnotations(cachedReport, document);
+        }
+
+        // the saved content analyzed by a project scan shows the kept results, until the file is edited
         PMDResultCollector collector = new PMDResultCollector();
+        VirtualFile virtualFile = info.file().getVirtualFile();
+        PMDFileResult keptResult = (virtualFile == null) ? null : collector.getKeptResultForSingleFile(
+                virtualFile, info.languageVersion(), inEditorAnnotationActiveRuleSets, projectComponent);
+        if (keptResult != null) {
+            Report keptReport = keptResult.toReport();
+            PMDAnnotationCache.put(document, modificationStamp, configurationKey, keptReport);
+            return new PMDAnnotations(keptReport, document);
+        }
+
+        // one analysis for all rule sets, the file is parsed once. Only the latest request of the document runs,
+        // after the min idle delay, other editors of the document share its result. A canceled analysis throws, its
+        // incomplete results are not cached nor shown. While indexing, it runs at low priority.
         PMDAnnotationRenderer renderer = new PMDAnnotationRenderer();
-        for (String ruleSetPath : inEditorAnnotationActiveRuleSets) {
-            if (isRuleSetForGivenFile(info, ruleSetPath)) {
-                collector.runPMDAndGetResultsForSingleFileNew(
-                        info.file(),
-                        info.languageVersion(),
-                        ruleSetPath,
-                        projectComponent,
-                        renderer);
-            }
+        PMDAnnotations annotations = PMDAnnotationQueue.run(document, modificationStamp, configurationKey,
+                getAnnotationDelayMs(projectComponent), DumbService.isDumb(info.getProject()), () -> {
+                    collector.runPMDAndGetResultsForSingleFileNew(
+                            info.file(),
+                            info.languageVersion(),
+                            inEditorAnnotationActiveRuleSets,
+                            projectComponent,
+                            renderer);
+                    return renderer.getResult(document);
+                });
+        if (document.getModificationStamp() == modificationStamp) {
+            PMDAnnotationCache.put(document, modificationStamp, configurationKey, annotations.report());
         }
+        return annotations;
+    }
 
-        return renderer.getResult(info.document());
+    /**
+     * Returns the min idle delay in ms before an analysis starts from the options.
+     */
+    private int getAnnotationDelayMs(PMDProjectComponent projectComponent) {
+        String delay = projectComponent.getOptionToValue().get(ConfigOption.ANNOTATION_DELAY);
+        try {
+            String value = (delay == null || delay.isBlank()) ? ConfigOption.ANNOTATION_DELAY.getDefaultValue() : delay.trim();
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid annotation delay '" + delay + "', using the default");
+            return Integer.parseInt(ConfigOption.ANNOTATION_DELAY.getDefaultValue());
+        }
+    }
+
+    /**
+     * Returns the key of the analysis configuration of the file: its rule sets and their contents, the settings,
+     * the aux classpath and the language version.
+     */
+    private static String getConfigurationKey(FileInfo info, List<String> ruleSetPaths, PMDProjectComponent projectComponent) {
+        return PMDResultCollector.getRuleSetsFingerprint(ruleSetPaths)
+                + "|" + projectComponent.getOptionToValue().hashCode()
+                + "|" + PMDClasspathService.getInstance(info.getProject()).getFingerprint()
+                + "|" + info.languageVersion().getTerseName();
     }
 
     private static boolean isRuleSetForGivenFile(FileInfo info, String ruleSetPath) {
-        // This is a very basic check to see if RuleSet applies to the file:
-        // it assumes the language id (e.g. "java" or "kotlin") is exclusively part of rule set path
-        // (e.g. /category/java/bestpractices.xml or /home/user/jpinpoint-java-rules.xml).
-        // This can fail if for (unexpected?) paths like: /home/user/kotlin/jpinpoint-java-rules.xml
-        return ruleSetPath.contains(info.languageVersion().getLanguage().getId());
+        // checks the languages and versions of the rules and the file patterns of the rule set, before the file is
+        // read or parsed
+        VirtualFile virtualFile = info.file().getVirtualFile();
+        return virtualFile != null
+                && PMDResultCollector.isRuleSetApplicable(ruleSetPath, info.languageVersion(), virtualFile);
     }
 
     @Override
@@ -123,10 +187,7 @@ public abstract class PMDExternalLanguageAnnotator extends ExternalAnnotator<Fil
                                 "<p>" +
                                 violation.getDescription() +
                                 "</p>" +
-                                "<p>" + DocMarkdownToHtmlConverter.convert(
-                                        DefaultProjectFactory.getInstance().getDefaultProject(),
-                                        rule.getDescription())
-                                + "</p>")
+                                "<p>" + getDescriptionHtml(rule) + "</p>")
                         .range(range)
                         .needsUpdateOnTyping(true);
 
@@ -154,6 +215,18 @@ public abstract class PMDExternalLanguageAnnotator extends ExternalAnnotator<Fil
         }
     }
 
+    /**
+     * Returns the description of the rule converted from Markdown to HTML, converted once per rule, so the
+     * description is not hashed for each violation. The conversions are dropped when a rule set is reloaded, so an
+     * edited description is converted again and the descriptions of removed rules are not kept.
+     */
+    private static String getDescriptionHtml(Rule rule) {
+        return ruleToDescriptionHtml.computeIfAbsent(new RuleKey(rule), key -> {
+            String markdown = (rule.getDescription() == null) ? "" : rule.getDescription();
+            return DocMarkdownToHtmlConverter.convert(DefaultProjectFactory.getInstance().getDefaultProject(), markdown);
+        });
+    }
+
     private static HighlightSeverity getSeverity(RuleViolation violation) {
         return switch (violation.getRule().getPriority()) {
             case HIGH -> HighlightSeverity.ERROR;
@@ -1,6 +1,15 @@
 package com.intellij.plugins.bodhi.pmd.annotator.langversion;
 
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.LanguageLevelProjectExtension;
+import com.intellij.openapi.roots.LanguageLevelUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.plugins.bodhi.pmd.PMDLanguageIds;
+import com.intellij.pom.java.LanguageLevel;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiJavaFile;
 import net.sourceforge.pmd.lang.Language;
@@ -23,4 +32,20 @@ public class JavaLanguageVersionResolver implements LanguageVersionResolver {
             ? language.getVersion(psiJavaFile.getLanguageLevel().toJavaVersion().toString())
             : null;
     }
+
+    @Override
+    public @Nullable Language resolveLanguage(@NotNull Project project, @NotNull VirtualFile file) {
+        return FileTypeRegistry.getInstance().isFileOfType(file, JavaFileType.INSTANCE)
+            ? LanguageRegistry.PMD.getLanguageById(PMDLanguageIds.JAVA)
+            : null;
+    }
+
+    @Override
+    public @Nullable LanguageVersion resolveVersion(@NotNull Language language, @NotNull Project project, @NotNull VirtualFile file) {
+        Module module = ModuleUtilCore.findModuleForFile(file, project);
+        LanguageLevel languageLevel = (module != null)
+            ? LanguageLevelUtil.getEffectiveLanguageLevel(module)
+            : LanguageLevelProjectExtension.getInstance(project).getLanguageLevel();
+        return language.getVersion(languageLevel.toJavaVersion().toString());
+    }
 }
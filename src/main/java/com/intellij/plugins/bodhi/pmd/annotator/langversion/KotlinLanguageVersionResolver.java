@@ -1,5 +1,10 @@
 package com.intellij.plugins.bodhi.pmd.annotator.langversion;
 
+import com.intellij.openapi.fileTypes.FileTypeRegistry;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.plugins.bodhi.pmd.PMDLanguageIds;
 import com.intellij.psi.PsiFile;
 import net.sourceforge.pmd.lang.Language;
@@ -7,6 +12,8 @@ import net.sourceforge.pmd.lang.LanguageRegistry;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.kotlin.config.LanguageVersionSettings;
+import org.jetbrains.kotlin.idea.KotlinFileType;
 import org.jetbrains.kotlin.idea.base.projectStructure.LanguageVersionSettingsProviderUtils;
 import org.jetbrains.kotlin.psi.KtFile;
 
@@ -26,4 +33,20 @@ public class KotlinLanguageVersionResolver implements LanguageVersionResolver {
                 .getVersionString())
                 : null;
     }
+
+    @Override
+    public @Nullable Language resolveLanguage(@NotNull Project project, @NotNull VirtualFile file) {
+        return FileTypeRegistry.getInstance().isFileOfType(file, KotlinFileType.INSTANCE)
+                ? LanguageRegistry.PMD.getLanguageById(PMDLanguageIds.KOTLIN)
+                : null;
+    }
+
+    @Override
+    public @Nullable LanguageVersion resolveVersion(@NotNull Language language, @NotNull Project project, @NotNull VirtualFile file) {
+        Module module = ModuleUtilCore.findModuleForFile(file, project);
+        LanguageVersionSettings settings = (module != null)
+                ? LanguageVersionSettingsProviderUtils.getLanguageVersionSettings(module)
+                : LanguageVersionSettingsProviderUtils.getLanguageVersionSettings(project);
+        return language.getVersion(settings.getLanguageVersion().getVersionString());
+    }
 }
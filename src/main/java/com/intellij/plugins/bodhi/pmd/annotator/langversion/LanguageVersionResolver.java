@@ -1,5 +1,7 @@
 package com.intellij.plugins.bodhi.pmd.annotator.langversion;
 
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
@@ -17,4 +19,20 @@ public interface LanguageVersionResolver {
 
     @Nullable
     LanguageVersion resolveVersion(@NotNull Language language, @NotNull PsiFile file);
+
+    /**
+     * Resolves the language of a file from its file type, without loading its PSI.
+     */
+    @Nullable
+    default Language resolveLanguage(@NotNull Project project, @NotNull VirtualFile file) {
+        return null;
+    }
+
+    /**
+     * Resolves the language version of a file from its module or project settings, without loading its PSI.
+     */
+    @Nullable
+    default LanguageVersion resolveVersion(@NotNull Language language, @NotNull Project project, @NotNull VirtualFile file) {
+        return null;
+    }
 }
@@ -2,7 +2,9 @@ package com.intellij.plugins.bodhi.pmd.annotator.langversion;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
@@ -51,4 +53,22 @@ public class LanguageVersionResolverService {
                 .filter(Objects::nonNull)
                 .findFirst());
     }
+
+    public Optional<Language> resolveLanguage(@NotNull Project project, @NotNull VirtualFile file)
+    {
+        return orderedResolvers()
+                .stream()
+                .map(r -> r.resolveLanguage(project, file))
+                .filter(Objects::nonNull)
+                .findFirst();
+    }
+
+    public Optional<LanguageVersion> resolveVersion(@NotNull Language language, @NotNull Project project, @NotNull VirtualFile file)
+    {
+        return ApplicationManager.getApplication().runReadAction((Computable<Optional<LanguageVersion>>) () -> orderedResolvers()
+                .stream()
+                .map(r -> r.resolveVersion(language, project, file))
+                .filter(Objects::nonNull)
+                .findFirst());
+    }
 }
@@ -1,6 +1,8 @@
 package com.intellij.plugins.bodhi.pmd.annotator.langversion;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.plugins.bodhi.pmd.ConfigOption;
 import com.intellij.plugins.bodhi.pmd.PMDLanguageIds;
 import com.intellij.plugins.bodhi.pmd.PMDProjectComponent;
@@ -21,26 +23,52 @@ public class ManagedLanguageVersionResolver {
 
     public Optional<LanguageVersion> resolveLanguage(final PsiFile file) {
         return resolverService.resolveLanguage(file)
-                .or(() -> {
-                    final String name = file.getName();
-                    final String fileExtension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+                .or(() -> resolveLanguageByExtension(file.getName()))
+                .map(lang -> resolveWithLang(lang, file));
+    }
 
-                    final String langId = switch (fileExtension) {
-                        case "java" -> PMDLanguageIds.JAVA;
-                        case "kt", "kts" -> PMDLanguageIds.KOTLIN;
-                        default -> null;
-                    };
-                    if(langId == null) {
-                        return Optional.empty();
-                    }
+    /**
+     * Resolves the language and version of a file from its file type and its module or project settings, without
+     * loading its PSI.
+     */
+    public Optional<LanguageVersion> resolveLanguage(@NotNull final Project project, @NotNull final VirtualFile file) {
+        return resolverService.resolveLanguage(project, file)
+                .or(() -> resolveLanguageByExtension(file.getName()))
+                .map(lang -> resolveWithLang(lang, project, file));
+    }
 
-                    return Optional.ofNullable(LanguageRegistry.PMD.getLanguageById(langId));
-                })
-                .map(lang -> resolveWithLang(lang, file));
+    private static Optional<Language> resolveLanguageByExtension(final String name) {
+        final String fileExtension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+
+        final String langId = switch (fileExtension) {
+            case "java" -> PMDLanguageIds.JAVA;
+            case "kt", "kts" -> PMDLanguageIds.KOTLIN;
+            default -> null;
+        };
+        if(langId == null) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(LanguageRegistry.PMD.getLanguageById(langId));
     }
 
     @NotNull
     public LanguageVersion resolveWithLang(@NotNull final Language language, @NotNull final PsiFile file) {
+        return getConfiguredVersion(language, file.getProject())
+                .orElseGet(() -> resolverService.resolveVersion(language, file)
+                        // Fallback to latest version
+                        .orElseGet(language::getLatestVersion));
+    }
+
+    @NotNull
+    public LanguageVersion resolveWithLang(@NotNull final Language language, @NotNull final Project project, @NotNull final VirtualFile file) {
+        return getConfiguredVersion(language, project)
+                .orElseGet(() -> resolverService.resolveVersion(language, project, file)
+                        // Fallback to latest version
+                        .orElseGet(language::getLatestVersion));
+    }
+
+    private Optional<LanguageVersion> getConfiguredVersion(@NotNull final Language language, @NotNull final Project project) {
         return languageConfigVersionsCache.computeIfAbsent(language, lang -> {
                     final ConfigOption configOption = switch (language.getId()) {
                         case PMDLanguageIds.JAVA -> ConfigOption.TARGET_JDK;
@@ -50,13 +78,10 @@ public class ManagedLanguageVersionResolver {
 
                     return Optional.ofNullable(configOption)
                             .map(opt -> language.getVersion(
-                                    file.getProject()
+                                    project
                                             .getService(PMDProjectComponent.class)
                                             .getOptionToValue()
                                             .get(opt)));
-                })
-                .orElseGet(() -> resolverService.resolveVersion(language, file)
-                        // Fallback to latest version
-                        .orElseGet(language::getLatestVersion));
+                });
     }
 }
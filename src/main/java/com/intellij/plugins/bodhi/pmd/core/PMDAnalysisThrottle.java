@@ -0,0 +1,180 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.plugins.bodhi.pmd.ConfigOption;
+import com.intellij.plugins.bodhi.pmd.PMDUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the number of files PMD analyzes concurrently, adapting the limit to the IDE while the analysis runs. PMD
+ * runs on a fixed number of worker threads, a worker waits for a permit before it starts the analysis of the next
+ * file. The limit is halved when the user is typing or the event dispatch thread responds slowly, it is lowered when
+ * the system is overloaded, and otherwise it grows back to the max, so an idle machine runs at full speed.
+ * <p>
+ * The profile is set by {@link ConfigOption#THREAD_PROFILE}: "fixed" does not limit the workers, "adaptive" adapts
+ * the limit up to the number of threads, "background" does the same up to half of the threads.
+ */
+class PMDAnalysisThrottle implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getInstance(PMDAnalysisThrottle.class);
+
+    static final String PROFILE_FIXED = "fixed";
+    static final String PROFILE_ADAPTIVE = "adaptive";
+    static final String PROFILE_BACKGROUND = "background";
+
+    /**
+     * interval to check the state of the IDE and adapt the limit
+     */
+    private static final int ADAPT_INTERVAL_MS = 250;
+    /**
+     * the user is considered typing when the last change of a document in an editor is more recent than this, see
+     * {@link PMDTypingListener}
+     */
+    private static final int TYPING_IDLE_MS = 1000;
+    /**
+     * max latency of the event dispatch thread to consider it responsive
+     */
+    private static final long MAX_EDT_LATENCY_MS = 100;
+    /**
+     * system load per processor above which the limit is lowered
+     */
+    private static final double MAX_LOAD_PER_PROCESSOR = 1.5;
+
+    private final int maxLimit;
+    private final AdjustableSemaphore permits;
+    private int limit; // only changed by the adapt task
+    private volatile long edtLatencyMs;
+    private final AtomicBoolean edtProbePending = new AtomicBoolean();
+    private final ScheduledFuture<?> adaptTask;
+
+    private PMDAnalysisThrottle(int maxLimit) {
+        this.maxLimit = maxLimit;
+        this.limit = maxLimit;
+        this.permits = new AdjustableSemaphore(maxLimit);
+        this.adaptTask = AppExecutorUtil.getAppScheduledExecutorService().scheduleWithFixedDelay(
+                this::adapt, ADAPT_INTERVAL_MS, ADAPT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates the throttle for an analysis with the given options, or null when the analysis should not be
+     * throttled: for the fixed profile or a single thread.
+     *
+     * @param options the configuration options
+     * @param threads the number of PMD worker threads
+     * @return the throttle, to close when the analysis is done, or null
+     */
+    static @Nullable PMDAnalysisThrottle create(Map<ConfigOption, String> options, int threads) {
+        String profile = options.get(ConfigOption.THREAD_PROFILE);
+        if (profile == null || profile.isBlank()) {
+            profile = ConfigOption.THREAD_PROFILE.getDefaultValue();
+        }
+        int maxLimit = switch (profile.trim().toLowerCase()) {
+            case PROFILE_FIXED -> 0;
+            case PROFILE_BACKGROUND -> Math.max(1, threads / 2);
+            case PROFILE_ADAPTIVE -> threads;
+            default -> {
+                LOG.warn("Unknown thread profile '" + profile + "', using " + PROFILE_ADAPTIVE);
+                yield threads;
+            }
+        };
+        return (maxLimit == 0 || threads <= 1) ? null : new PMDAnalysisThrottle(maxLimit);
+    }
+
+    /**
+     * Waits for a permit to analyze a file. Call {@link #release()} when the analysis of the file is done.
+     *
+     * @param indicator the progress indicator of the analysis, to stop waiting when canceled, may be null
+     * @throws ProcessCanceledException when the indicator is canceled while waiting
+     */
+    void acquire(@Nullable ProgressIndicator indicator) {
+        try {
+            while (!permits.tryAcquire(ADAPT_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                if (indicator != null) {
+                    indicator.checkCanceled();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessCanceledException(e);
+        }
+    }
+
+    /**
+     * Releases the permit of an analyzed file.
+     */
+    void release() {
+        permits.release();
+    }
+
+    private void adapt() {
+        probeEdtLatency();
+        boolean typing = System.currentTimeMillis() - PMDTypingListener.getLastTypingMs() < TYPING_IDLE_MS;
+        double loadAverage = ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage(); // negative when not available
+        int newLimit;
+        if (typing || edtLatencyMs > MAX_EDT_LATENCY_MS) {
+            newLimit = Math.max(1, limit / 2);
+        } else if (loadAverage / PMDUtil.AVAILABLE_PROCESSORS > MAX_LOAD_PER_PROCESSOR) {
+            newLimit = Math.max(1, limit - 1);
+        } else {
+            newLimit = Math.min(maxLimit, limit + 1);
+        }
+        if (newLimit > limit) {
+            permits.release(newLimit - limit);
+        } else if (newLimit < limit) {
+            // running analyses finish, only the start of the next files waits
+            permits.reducePermits(limit - newLimit);
+        }
+        if (newLimit != limit) {
+            LOG.debug("PMD analysis limit " + limit + " -> " + newLimit + " (typing: " + typing
+                    + ", EDT latency: " + edtLatencyMs + "ms, load: " + loadAverage + ")");
+        }
+        limit = newLimit;
+    }
+
+    /**
+     * Measures the time until a posted event runs on the event dispatch thread, at most one probe at a time. A
+     * probe which does not return keeps the last measured latency high.
+     */
+    private void probeEdtLatency() {
+        if (edtProbePending.compareAndSet(false, true)) {
+            long postedNs = System.nanoTime();
+            ApplicationManager.getApplication().invokeLater(() -> {
+                edtLatencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - postedNs);
+                edtProbePending.set(false);
+            }, ModalityState.any());
+        } else {
+            edtLatencyMs = Math.max(edtLatencyMs, ADAPT_INTERVAL_MS);
+        }
+    }
+
+    @Override
+    public void close() {
+        adaptTask.cancel(false);
+    }
+
+    /**
+     * A semaphore of which the number of permits can be lowered while permits are acquired.
+     */
+    private static final class AdjustableSemaphore extends Semaphore {
+        AdjustableSemaphore(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.ModuleRootListener;
+import com.intellij.plugins.bodhi.pmd.PMDUtil;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.internal.util.ClasspathClassLoader;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provides the aux classpath of all modules of the project for PMD type resolution. The classpath is computed once
+ * and recomputed only after the module roots have changed. Module root changes, also those from workspace model
+ * updates, are published by the platform as {@link ModuleRootListener} events.
+ * <p>
+ * It also provides a long-lived class loader on that classpath for type resolution, so jars are not reopened and
+ * classes not resolved again for every analysis. The class loader is replaced when the classpath fingerprint
+ * changes, and closed when no analysis uses it anymore or when the project is disposed.
+ */
+@Service(Service.Level.PROJECT)
+public final class PMDClasspathService implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(PMDClasspathService.class);
+    private final Project project;
+    private final AtomicLong rootsModificationCount = new AtomicLong();
+    private volatile AuxClasspath auxClasspath;
+    private SharedClassLoader sharedClassLoader; // guarded by this
+    private boolean disposed; // guarded by this
+
+    public PMDClasspathService(Project project) {
+        this.project = project;
+        project.getMessageBus().connect(this).subscribe(ModuleRootListener.TOPIC, new ModuleRootListener() {
+            @Override
+            public void rootsChanged(@NotNull ModuleRootEvent event) {
+                invalidate();
+            }
+        });
+    }
+
+    public static PMDClasspathService getInstance(Project project) {
+        return project.getService(PMDClasspathService.class);
+    }
+
+    /**
+     * Returns a fingerprint of the aux classpath which changes when the classpath changes.
+     *
+     * @return the fingerprint of the aux classpath
+     */
+    public String getFingerprint() {
+        return getUpToDateClasspath().fingerprint();
+    }
+
+    /**
+     * Discards the computed classpath, it is recomputed on next use.
+     */
+    public void invalidate() {
+        rootsModificationCount.incrementAndGet();
+        auxClasspath = null;
+    }
+
+    private AuxClasspath getUpToDateClasspath() {
+        AuxClasspath current = auxClasspath;
+        long modCount = rootsModificationCount.get();
+        if (current == null || current.modificationCount() != modCount) {
+            String classpath = ReadAction.compute(() -> PMDUtil.getFullClassPathForAllModules(project));
+            current = new AuxClasspath(classpath, DigestUtils.sha1Hex(classpath), modCount);
+            if (rootsModificationCount.get() == modCount) {
+                // only keep when roots didn't change while computing
+                auxClasspath = current;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Acquires the class loader for type resolution on the aux classpath. The lease must be closed when the
+     * analysis using it is done, typically with try-with-resources.
+     *
+     * @return the lease of the class loader
+     * @throws IOException when the class loader cannot be created from the classpath
+     */
+    public ClassLoaderLease acquireClassLoader() throws IOException {
+        AuxClasspath classpath = getUpToDateClasspath(); // outside the lock, it needs a read action
+        synchronized (this) {
+            if (disposed) {
+                throw new IllegalStateException("Project is disposed: " + project);
+            }
+            if (sharedClassLoader == null || !sharedClassLoader.fingerprint.equals(classpath.fingerprint())) {
+                if (sharedClassLoader != null) {
+                    sharedClassLoader.retire();
+                }
+                sharedClassLoader = new SharedClassLoader(classpath.fingerprint(),
+                        new ClasspathClassLoader(classpath.classpath(), PMDConfiguration.class.getClassLoader()));
+            }
+            return sharedClassLoader.acquire();
+        }
+    }
+
+    @Override
+    public synchronized void dispose() {
+        disposed = true;
+        auxClasspath = null;
+        if (sharedClassLoader != null) {
+            sharedClassLoader.retire();
+            sharedClassLoader = null;
+        }
+    }
+
+    /**
+     * The computed classpath with its fingerprint and the roots modification count it was computed for.
+     */
+    private record AuxClasspath(String classpath, String fingerprint, long modificationCount) {
+    }
+
+    /**
+     * A class loader shared by analyses, closed when retired and no longer in use.
+     */
+    private static final class SharedClassLoader {
+        private final String fingerprint;
+        private final ClasspathClassLoader classLoader;
+        private int users;
+        private boolean retired;
+
+        SharedClassLoader(String fingerprint, ClasspathClassLoader classLoader) {
+            this.fingerprint = fingerprint;
+            this.classLoader = classLoader;
+        }
+
+        synchronized ClassLoaderLease acquire() {
+            users++;
+            return new ClassLoaderLease(this);
+        }
+
+        synchronized void release() {
+            users--;
+            closeIfUnused();
+        }
+
+        synchronized void retire() {
+            retired = true;
+            closeIfUnused();
+        }
+
+        private void closeIfUnused() {
+            if (retired && users == 0) {
+                try {
+                    classLoader.close();
+                } catch (IOException e) {
+                    LOG.warn("Failed to close PMD type resolution class loader", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delegates to the shared class loader, and exposes its classpath. PmdAnalysis closes the class loader of its
+     * configuration, so closing does nothing: the shared class loader is closed by the service. The incremental
+     * analysis cache checksums the classpath of a {@link URLClassLoader}, so a changed jar invalidates the cache.
+     * It never loads from the classpath itself, not to open jars which would not be closed.
+     */
+    private static final class LeasedClassLoader extends URLClassLoader {
+
+        LeasedClassLoader(URLClassLoader shared) {
+            super(shared.getURLs(), shared);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            throw new ClassNotFoundException(name);
+        }
+
+        @Override
+        public URL findResource(String name) {
+            return null;
+        }
+
+        @Override
+        public Enumeration<URL> findResources(String name) {
+            return Collections.emptyEnumeration();
+        }
+
+        @Override
+        public void close() {
+            // the shared class loader is closed when retired and unused
+        }
+    }
+
+    /**
+     * The use of the shared class loader by one analysis.
+     */
+    public static final class ClassLoaderLease implements AutoCloseable {
+        private final SharedClassLoader shared;
+        private final ClassLoader classLoader;
+        private boolean closed;
+
+        private ClassLoaderLease(SharedClassLoader shared) {
+            this.shared = shared;
+            this.classLoader = new LeasedClassLoader(shared.classLoader);
+        }
+
+        /**
+         * Returns the class loader to set on the PMD configuration.
+         *
+         * @return the class loader for type resolution
+         */
+        public ClassLoader getClassLoader() {
+            return classLoader;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                shared.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.plugins.bodhi.pmd.PMDProjectComponent;
+import com.intellij.plugins.bodhi.pmd.PMDUtil;
+import net.sourceforge.pmd.PMDConfiguration;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Supplier;
+
+/**
+ * The warm state of the in-editor analyses of a project: the editor rule sets combined and ready to run, and the PMD
+ * configuration per language version, so the analysis of a single file does not set these up again. The combined
+ * rule sets are rebuilt only when the rule set paths change or a rule set is reloaded, because its file changed. The
+ * aux classpath and its class loader for type resolution are kept by {@link PMDClasspathService}, rebuilt when the
+ * module roots change, and a configuration is rebuilt with the new class loader. PMD itself creates the language
+ * processors for each analysis, they cannot be kept between analyses through its API.
+ * <p>
+ * Rule instances are stateful, so an analysis leases its own copy of the combined rule sets. Copies are returned to
+ * a pool when the analysis is done, and reused by later analyses.
+ */
+@Service(Service.Level.PROJECT)
+public final class PMDEditorAnalysisSession {
+
+    private static final Logger LOG = Logger.getInstance(PMDEditorAnalysisSession.class);
+
+    /**
+     * max number of idle copies of the rule sets to keep, about the number of files annotated concurrently
+     */
+    private static final int MAX_IDLE_COPIES = Math.max(2, PMDUtil.AVAILABLE_PROCESSORS / 2);
+
+    private volatile CombinedRuleSets combinedRuleSets;
+    private final Map<Set<LanguageVersion>, WarmConfiguration> languageVersionsToConfiguration = new ConcurrentHashMap<>();
+
+    public static PMDEditorAnalysisSession getInstance(Project project) {
+        return project.getService(PMDEditorAnalysisSession.class);
+    }
+
+    /**
+     * Leases a copy of the combined rule sets at the given paths, see {@link PMDResultCollector#combineRuleSets}.
+     * The lease must be closed when the analysis using the rule sets is done, typically with try-with-resources.
+     *
+     * @param ruleSetPaths the paths of the rule sets to run
+     * @param comp the project component, to report invalid rule sets
+     * @return the lease of the rule sets
+     */
+    RuleSetsLease acquireRuleSets(List<String> ruleSetPaths, PMDProjectComponent comp) {
+        return getCombinedRuleSets(ruleSetPaths, comp).acquire();
+    }
+
+    /**
+     * Returns the combined rule sets at the given paths, to look up their rules without running them.
+     *
+     * @param ruleSetPaths the paths of the rule sets
+     * @param comp the project component, to report invalid rule sets
+     * @return the combined rule sets
+     */
+    CombinedRuleSets getCombinedRuleSets(List<String> ruleSetPaths, PMDProjectComponent comp) {
+        List<RuleSet> loadedRuleSets = new ArrayList<>();
+        for (String ruleSetPath : ruleSetPaths) {
+            RuleSet ruleSet;
+            try {
+                ruleSet = PMDResultCollector.getRuleSet(ruleSetPath);
+            } catch (PMDResultCollector.InvalidRuleSetException e) {
+                ruleSet = null; // reported when combining
+            }
+            loadedRuleSets.add(ruleSet);
+        }
+        CombinedRuleSets current = combinedRuleSets;
+        if (current == null || !current.isFor(ruleSetPaths, loadedRuleSets)) {
+            Map<String, String> ruleFingerprintToRuleSetPath = new HashMap<>();
+            // the editor analyses run in background threads, the result tree is only updated in the EDT
+            Project project = comp.getCurrentProject();
+            List<RuleSet> ruleSets = PMDResultCollector.combineRuleSets(ruleSetPaths, ruleFingerprintToRuleSetPath,
+                    errorMsg -> ApplicationManager.getApplication().invokeLater(
+                            () -> comp.getResultPanel().getRootNode().setRuleSetErrorMsg(errorMsg), project.getDisposed()));
+            current = new CombinedRuleSets(List.copyOf(ruleSetPaths), loadedRuleSets, ruleSets, Map.copyOf(ruleFingerprintToRuleSetPath));
+            combinedRuleSets = current;
+            LOG.debug("Rebuilt editor analysis session for rule sets " + ruleSetPaths);
+        }
+        return current;
+    }
+
+    /**
+     * Returns the PMD configuration for an in-editor analysis of files of the language versions with the aux class
+     * loader, creating it with the factory when there is none for the class loader yet. The configuration is not
+     * modified once created, so concurrent analyses share it.
+     *
+     * @param languageVersions the language versions of the analysis
+     * @param auxClassLoader the class loader on the aux classpath of the configuration
+     * @param factory creates the configuration
+     * @return the configuration
+     */
+    PMDConfiguration getConfiguration(Set<LanguageVersion> languageVersions, ClassLoader auxClassLoader, Supplier<PMDConfiguration> factory) {
+        WarmConfiguration warm = languageVersionsToConfiguration.get(languageVersions);
+        if (warm == null || warm.auxClassLoader() != auxClassLoader) {
+            warm = new WarmConfiguration(auxClassLoader, factory.get());
+            languageVersionsToConfiguration.put(Set.copyOf(languageVersions), warm);
+        }
+        return warm.configuration();
+    }
+
+    private static List<RuleSet> copyRuleSets(List<RuleSet> ruleSets) {
+        List<RuleSet> copies = new ArrayList<>();
+        for (RuleSet ruleSet : ruleSets) {
+            List<Rule> rules = new ArrayList<>();
+            for (Rule rule : ruleSet.getRules()) {
+                rules.add(rule.deepCopy());
+            }
+            copies.add(RuleSet.create(ruleSet.getName(), ruleSet.getDescription(), ruleSet.getFileName(),
+                    ruleSet.getFileExclusions(), ruleSet.getFileInclusions(), rules));
+        }
+        return copies;
+    }
+
+    /**
+     * The combined rule sets for the rule set paths, built from the loaded rule sets, with the idle copies.
+     */
+    static final class CombinedRuleSets {
+        private final List<String> ruleSetPaths;
+        private final List<RuleSet> loadedRuleSets;
+        private final List<RuleSet> ruleSets; // the template, never run itself
+        private final Map<String, String> ruleFingerprintToRuleSetPath;
+        private final PMDRuleFingerprints ruleFingerprints = new PMDRuleFingerprints(); // of the template rules
+        private final List<PMDRuleSetScope> ruleSetScopes;
+        private final Queue<List<RuleSet>> idleCopies = new ConcurrentLinkedQueue<>();
+
+        private CombinedRuleSets(List<String> ruleSetPaths, List<RuleSet> loadedRuleSets, List<RuleSet> ruleSets, Map<String, String> ruleFingerprintToRuleSetPath) {
+            this.ruleSetPaths = ruleSetPaths;
+            this.loadedRuleSets = loadedRuleSets;
+            this.ruleSets = ruleSets;
+            this.ruleFingerprintToRuleSetPath = ruleFingerprintToRuleSetPath;
+            this.ruleSetScopes = ruleSets.stream().map(PMDRuleSetScope::new).toList();
+        }
+
+        /**
+         * Returns the fingerprints of the rules of the rule set scopes, see {@link PMDResultCollector#getRuleFingerprint}.
+         */
+        PMDRuleFingerprints getRuleFingerprints() {
+            return ruleFingerprints;
+        }
+
+        /**
+         * Returns the scopes of the rule sets, to select the rules applying to a file.
+         */
+        List<PMDRuleSetScope> getRuleSetScopes() {
+            return ruleSetScopes;
+        }
+
+        /**
+         * Returns whether they are built for the paths and the same loaded rule set instances.
+         */
+        boolean isFor(List<String> paths, List<RuleSet> loaded) {
+            if (!ruleSetPaths.equals(paths)) {
+                return false;
+            }
+            for (int i = 0; i < loaded.size(); i++) {
+                if (loaded.get(i) != loadedRuleSets.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        RuleSetsLease acquire() {
+            List<RuleSet> copy = idleCopies.poll();
+            return new RuleSetsLease(this, (copy != null) ? copy : copyRuleSets(ruleSets));
+        }
+
+        void release(List<RuleSet> copy) {
+            if (idleCopies.size() < MAX_IDLE_COPIES) {
+                idleCopies.add(copy);
+            }
+        }
+    }
+
+    /**
+     * A PMD configuration with the class loader it was created with.
+     */
+    private record WarmConfiguration(ClassLoader auxClassLoader, PMDConfiguration configuration) {
+    }
+
+    /**
+     * The use of a copy of the combined rule sets by one analysis.
+     */
+    static final class RuleSetsLease implements AutoCloseable {
+        private final CombinedRuleSets combined;
+        private final List<RuleSet> ruleSets;
+        private boolean closed;
+
+        private RuleSetsLease(CombinedRuleSets combined, List<RuleSet> ruleSets) {
+            this.combined = combined;
+            this.ruleSets = ruleSets;
+        }
+
+        /**
+         * Returns the rule sets to run, without duplicate rules.
+         */
+        List<RuleSet> getRuleSets() {
+            return ruleSets;
+        }
+
+        /**
+         * Returns the rule set path each rule of the rule sets is taken from, by rule fingerprint.
+         */
+        Map<String, String> getRuleFingerprintToRuleSetPath() {
+            return combined.ruleFingerprintToRuleSetPath;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                combined.release(ruleSets);
+            }
+        }
+    }
+}
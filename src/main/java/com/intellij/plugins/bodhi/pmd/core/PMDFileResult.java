@@ -0,0 +1,55 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The PMD result of the analysis of a single file: its violations, suppressed violations and processing errors.
+ */
+public record PMDFileResult(List<RuleViolation> violations,
+                            List<Report.SuppressedViolation> suppressedViolations,
+                            List<Report.ProcessingError> processingErrors) {
+
+    public PMDFileResult {
+        violations = List.copyOf(violations);
+        suppressedViolations = List.copyOf(suppressedViolations);
+        processingErrors = List.copyOf(processingErrors);
+    }
+
+    /**
+     * Merges the results of the same file, like the results of different rules.
+     *
+     * @param results the results to merge
+     * @return the merged result
+     */
+    public static PMDFileResult merge(List<PMDFileResult> results) {
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+        List<RuleViolation> violations = new ArrayList<>();
+        List<Report.SuppressedViolation> suppressedViolations = new ArrayList<>();
+        List<Report.ProcessingError> processingErrors = new ArrayList<>();
+        for (PMDFileResult result : results) {
+            violations.addAll(result.violations());
+            suppressedViolations.addAll(result.suppressedViolations());
+            processingErrors.addAll(result.processingErrors());
+        }
+        return new PMDFileResult(violations, suppressedViolations, processingErrors);
+    }
+
+    /**
+     * Creates a PMD report of the result.
+     *
+     * @return the report with the violations, suppressed violations and processing errors of the result
+     */
+    public Report toReport() {
+        return Report.buildReport(listener -> {
+            violations.forEach(listener::onRuleViolation);
+            suppressedViolations.forEach(listener::onSuppressedRuleViolation);
+            processingErrors.forEach(listener::onError);
+        });
+    }
+}
@@ -0,0 +1,149 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.sourceforge.pmd.lang.document.TextFile;
+import net.sourceforge.pmd.reporting.FileAnalysisListener;
+import net.sourceforge.pmd.reporting.GlobalAnalysisListener;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects the results of an analysis per file. When the analysis of a file is done, its result is passed to the
+ * consumer, also when the file has no findings. PMD may analyze files concurrently, so the consumer must be
+ * thread-safe.
+ * <p>
+ * It also makes the analysis cancelable per file: when the progress indicator is canceled, the analysis of each
+ * next file fails right at its start, so the PMD worker threads stop within the processing time of one file. The
+ * files analyzed so far keep their result. The analysis of a file also stops before its content is read, see
+ * {@link PMDResultCollector.IDETextFile#readContents()}, and at its next finding when canceled. With a throttle, the
+ * start of a file waits for a permit of the throttle.
+ * With a dumb service, the start of a file waits while the IDE is indexing, so the analysis pauses meanwhile.
+ */
+class PMDFileResultListener implements GlobalAnalysisListener {
+
+    /**
+     * interval to check whether the IDE finished indexing
+     */
+    private static final int SMART_MODE_POLL_MS = 200;
+
+    private final @Nullable ProgressIndicator indicator;
+    private final @Nullable PMDAnalysisThrottle throttle;
+    private final @Nullable DumbService dumbService;
+    private final BiConsumer<VirtualFile, PMDFileResult> consumer;
+
+    PMDFileResultListener(@Nullable ProgressIndicator indicator,
+                          @Nullable PMDAnalysisThrottle throttle,
+                          @Nullable DumbService dumbService,
+                          BiConsumer<VirtualFile, PMDFileResult> consumer) {
+        this.indicator = indicator;
+        this.throttle = throttle;
+        this.dumbService = dumbService;
+        this.consumer = consumer;
+    }
+
+    @Override
+    public FileAnalysisListener startFileAnalysis(TextFile file) {
+        checkCanceled();
+        if (!(file instanceof PMDResultCollector.IDETextFile ideTextFile)) {
+            return FileAnalysisListener.noop();
+        }
+        VirtualFile virtualFile = ideTextFile.getVirtualFile();
+        if (dumbService != null) {
+            waitForSmartMode(dumbService, indicator);
+        }
+        if (throttle != null) {
+            throttle.acquire(indicator);
+        }
+        return new FileAnalysisListener() {
+            private final List<RuleViolation> violations = new ArrayList<>();
+            private final List<Report.SuppressedViolation> suppressedViolations = new ArrayList<>();
+            private final List<Report.ProcessingError> processingErrors = new ArrayList<>();
+
+            @Override
+            public void onRuleViolation(RuleViolation violation) {
+                checkCanceled();
+                violations.add(violation);
+            }
+
+            @Override
+            public void onSuppressedRuleViolation(Report.SuppressedViolation violation) {
+                checkCanceled();
+                suppressedViolations.add(violation);
+            }
+
+            @Override
+            public void onError(Report.ProcessingError error) {
+                // PMD reports the cancellation thrown from a rule as its error, rethrow it to stop the file
+                checkCanceled();
+                processingErrors.add(error);
+            }
+
+            @Override
+            public void close() {
+                try {
+                    // the result of a file of which the analysis was stopped is incomplete
+                    if (indicator == null || !indicator.isCanceled()) {
+                        consumer.accept(virtualFile, new PMDFileResult(violations, suppressedViolations, processingErrors));
+                    }
+                } finally {
+                    if (throttle != null) {
+                        throttle.release();
+                    }
+                }
+            }
+        };
+    }
+
+    private void checkCanceled() {
+        if (indicator != null) {
+            indicator.checkCanceled();
+        }
+    }
+
+    /**
+     * Waits while the IDE is indexing, showing that the analysis is paused meanwhile.
+     *
+     * @param dumbService the dumb service of the project
+     * @param indicator the progress indicator of the analysis, to stop waiting when canceled, may be null
+     * @throws ProcessCanceledException when the indicator is canceled while waiting
+     */
+    static void waitForSmartMode(DumbService dumbService, @Nullable ProgressIndicator indicator) {
+        if (!dumbService.isDumb()) {
+            return;
+        }
+        if (indicator != null) {
+            indicator.setText2("Paused while indexing");
+        }
+        try {
+            while (dumbService.isDumb()) {
+                if (indicator != null) {
+                    indicator.checkCanceled();
+                }
+                try {
+                    Thread.sleep(SMART_MODE_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ProcessCanceledException(e);
+                }
+            }
+        } finally {
+            if (indicator != null) {
+                // the progress renderer shows the next file
+                indicator.setText2("");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // Nothing, results are passed per file
+    }
+}
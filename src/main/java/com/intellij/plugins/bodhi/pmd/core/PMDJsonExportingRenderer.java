@@ -32,6 +32,8 @@ import static net.sourceforge.pmd.reporting.RuleViolation.PACKAGE_NAME;
 /**
  * For exporting anonymized PMD results to a server in JSON format.
  * Can be tested e.g. with nc -lvk 8080.
+ * The renderer can be added to several analyses, like the batches of a scan, and collects the results of all of them
+ * in one JSON document, which is completed and exported by {@link #exportJsonData()}.
  */
 public class PMDJsonExportingRenderer extends AbstractIncrementingRenderer {
     private static final String NAME = "json exporter";
@@ -70,6 +72,9 @@ public class PMDJsonExportingRenderer extends AbstractIncrementingRenderer {
 
     @Override
     public void start() throws IOException {
+        if (jsonWriter != null) {
+            return; // started by an earlier analysis
+        }
         jsonWriter = new JsonWriter(writer);
         jsonWriter.setHtmlSafe(true);
         jsonWriter.setIndent("  ");
@@ -158,7 +163,11 @@ public class PMDJsonExportingRenderer extends AbstractIncrementingRenderer {
     }
 
     @Override
-    public void end() throws IOException {
+    public void end() {
+        // the document is completed on export, after the last analysis
+    }
+
+    private void endDocument() throws IOException {
         jsonWriter.endArray(); // files
 
         jsonWriter.name("suppressedViolations").beginArray();
@@ -224,6 +233,12 @@ public class PMDJsonExportingRenderer extends AbstractIncrementingRenderer {
      * @return an error message in case of failure, empty String in case of success
      */
     public String exportJsonData() {
+        try {
+            start(); // when no file was analyzed
+            endDocument();
+        } catch (IOException e) {
+            return e.getMessage();
+        }
         String content = getWriter().toString();
         return tryJsonExport(content, exportStatisticsUrl); // we assume it works
     }
@@ -0,0 +1,241 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.util.io.IOUtil;
+import net.sourceforge.pmd.lang.ast.Node;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import net.sourceforge.pmd.reporting.ViolationSuppressor;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The result of one rule on the content of a file, as kept by the {@link PMDScanResultStore}: the violations and
+ * suppressed violations without the file and the rule, so the result applies to any file with the same content, and
+ * can be written to disk. It is turned back into a {@link PMDFileResult} for a file and the current rule with the
+ * fingerprint of the kept result. Results with processing errors are not kept.
+ */
+final class PMDKeptResult {
+
+    private final List<KeptViolation> violations;
+    private final List<KeptSuppressedViolation> suppressedViolations;
+
+    private PMDKeptResult(List<KeptViolation> violations, List<KeptSuppressedViolation> suppressedViolations) {
+        this.violations = violations;
+        this.suppressedViolations = suppressedViolations;
+    }
+
+    /**
+     * Creates the kept result of the result of a single rule.
+     *
+     * @param result the result of a single rule, without processing errors
+     * @return the kept result
+     */
+    static PMDKeptResult of(PMDFileResult result) {
+        List<KeptViolation> violations = new ArrayList<>();
+        for (RuleViolation violation : result.violations()) {
+            violations.add(KeptViolation.of(violation));
+        }
+        List<KeptSuppressedViolation> suppressedViolations = new ArrayList<>();
+        for (Report.SuppressedViolation suppressed : result.suppressedViolations()) {
+            suppressedViolations.add(new KeptSuppressedViolation(KeptViolation.of(suppressed.getRuleViolation()),
+                    suppressed.getSuppressor().getId(), suppressed.getUserMessage()));
+        }
+        return new PMDKeptResult(List.copyOf(violations), List.copyOf(suppressedViolations));
+    }
+
+    /**
+     * Returns the result of the rule for the file.
+     *
+     * @param rule the rule with the fingerprint the result is kept by
+     * @param fileId the file with the content of the result
+     * @return the file result
+     */
+    PMDFileResult toFileResult(Rule rule, FileId fileId) {
+        List<RuleViolation> fileViolations = new ArrayList<>();
+        for (KeptViolation violation : violations) {
+            fileViolations.add(violation.toRuleViolation(rule, fileId));
+        }
+        List<Report.SuppressedViolation> fileSuppressedViolations = new ArrayList<>();
+        for (KeptSuppressedViolation suppressed : suppressedViolations) {
+            fileSuppressedViolations.add(new Report.SuppressedViolation(suppressed.violation().toRuleViolation(rule, fileId),
+                    getSuppressor(suppressed.suppressorId()), suppressed.userMessage()));
+        }
+        return new PMDFileResult(fileViolations, fileSuppressedViolations, List.of());
+    }
+
+    /**
+     * Estimates the memory size in bytes of the result, the descriptions dominate.
+     */
+    long estimateSize() {
+        long size = 64;
+        for (KeptViolation violation : violations) {
+            size += violation.estimateSize();
+        }
+        for (KeptSuppressedViolation suppressed : suppressedViolations) {
+            size += 32 + suppressed.violation().estimateSize();
+        }
+        return size;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(violations.size());
+        for (KeptViolation violation : violations) {
+            violation.write(out);
+        }
+        out.writeInt(suppressedViolations.size());
+        for (KeptSuppressedViolation suppressed : suppressedViolations) {
+            suppressed.violation().write(out);
+            IOUtil.writeUTF(out, suppressed.suppressorId());
+            out.writeBoolean(suppressed.userMessage() != null);
+            if (suppressed.userMessage() != null) {
+                IOUtil.writeUTF(out, suppressed.userMessage());
+            }
+        }
+    }
+
+    static PMDKeptResult read(DataInput in) throws IOException {
+        int violationCount = in.readInt();
+        List<KeptViolation> violations = new ArrayList<>(violationCount);
+        for (int i = 0; i < violationCount; i++) {
+            violations.add(KeptViolation.read(in));
+        }
+        int suppressedCount = in.readInt();
+        List<KeptSuppressedViolation> suppressedViolations = new ArrayList<>(suppressedCount);
+        for (int i = 0; i < suppressedCount; i++) {
+            KeptViolation violation = KeptViolation.read(in);
+            String suppressorId = IOUtil.readUTF(in);
+            String userMessage = in.readBoolean() ? IOUtil.readUTF(in) : null;
+            suppressedViolations.add(new KeptSuppressedViolation(violation, suppressorId, userMessage));
+        }
+        return new PMDKeptResult(List.copyOf(violations), List.copyOf(suppressedViolations));
+    }
+
+    /**
+     * Returns the suppressor with the id: the PMD suppressor which is compared by identity, like the NOPMD comment
+     * suppressor, or a suppressor which only has the id, like the annotation suppressor of a language.
+     */
+    private static ViolationSuppressor getSuppressor(String id) {
+        for (ViolationSuppressor suppressor : List.of(ViolationSuppressor.NOPMD_COMMENT_SUPPRESSOR,
+                ViolationSuppressor.REGEX_SUPPRESSOR, ViolationSuppressor.XPATH_SUPPRESSOR)) {
+            if (suppressor.getId().equals(id)) {
+                return suppressor;
+            }
+        }
+        return new KeptSuppressor(id);
+    }
+
+    private record KeptViolation(String description, int beginLine, int beginColumn, int endLine, int endColumn,
+                                 Map<String, String> additionalInfo) {
+
+        static KeptViolation of(RuleViolation violation) {
+            return new KeptViolation(violation.getDescription(), violation.getBeginLine(), violation.getBeginColumn(),
+                    violation.getEndLine(), violation.getEndColumn(), Map.copyOf(violation.getAdditionalInfo()));
+        }
+
+        RuleViolation toRuleViolation(Rule rule, FileId fileId) {
+            return new FileViolation(rule, FileLocation.range(fileId,
+                    TextRange2d.range2d(beginLine, beginColumn, endLine, endColumn)), description, additionalInfo);
+        }
+
+        long estimateSize() {
+            long size = 96 + 2L * description.length();
+            for (Map.Entry<String, String> entry : additionalInfo.entrySet()) {
+                size += 64 + 2L * entry.getValue().length();
+            }
+            return size;
+        }
+
+        void write(DataOutput out) throws IOException {
+            IOUtil.writeUTF(out, description);
+            out.writeInt(beginLine);
+            out.writeInt(beginColumn);
+            out.writeInt(endLine);
+            out.writeInt(endColumn);
+            out.writeInt(additionalInfo.size());
+            for (Map.Entry<String, String> entry : new TreeMap<>(additionalInfo).entrySet()) {
+                IOUtil.writeUTF(out, entry.getKey());
+                IOUtil.writeUTF(out, entry.getValue());
+            }
+        }
+
+        static KeptViolation read(DataInput in) throws IOException {
+            String description = IOUtil.readUTF(in);
+            int beginLine = in.readInt();
+            int beginColumn = in.readInt();
+            int endLine = in.readInt();
+            int endColumn = in.readInt();
+            int infoCount = in.readInt();
+            Map<String, String> additionalInfo = new TreeMap<>();
+            for (int i = 0; i < infoCount; i++) {
+                additionalInfo.put(IOUtil.readUTF(in), IOUtil.readUTF(in));
+            }
+            return new KeptViolation(description, beginLine, beginColumn, endLine, endColumn, Map.copyOf(additionalInfo));
+        }
+    }
+
+    private record KeptSuppressedViolation(KeptViolation violation, String suppressorId, @Nullable String userMessage) {
+    }
+
+    /**
+     * A kept violation of a rule in a file.
+     */
+    private static final class FileViolation implements RuleViolation {
+        private final Rule rule;
+        private final FileLocation location;
+        private final String description;
+        private final Map<String, String> additionalInfo;
+
+        FileViolation(Rule rule, FileLocation location, String description, Map<String, String> additionalInfo) {
+            this.rule = rule;
+            this.location = location;
+            this.description = description;
+            this.additionalInfo = additionalInfo;
+        }
+
+        @Override
+        public Rule getRule() {
+            return rule;
+        }
+
+        @Override
+        public String getDescription() {
+            return description;
+        }
+
+        @Override
+        public FileLocation getLocation() {
+            return location;
+        }
+
+        @Override
+        public Map<String, String> getAdditionalInfo() {
+            return additionalInfo;
+        }
+    }
+
+    /**
+     * The suppressor of a kept suppressed violation, which only identifies the kind of suppression.
+     */
+    private record KeptSuppressor(String id) implements ViolationSuppressor {
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public @Nullable Report.SuppressedViolation suppressOrNull(RuleViolation rv, Node node) {
+            return null; // never suppresses, it only describes a suppression found before
+        }
+    }
+}
@@ -79,6 +79,14 @@ public class PMDProcessingError implements HasPositionInFile {
         return processingError.getDetail();
     }
 
+    /**
+     * Returns the wrapped PMD processing error.
+     * @return the wrapped PMD processing error.
+     */
+    Report.ProcessingError getProcessingError() {
+        return processingError;
+    }
+
     /**
      * Returns the position text to render.
      * @return the position text to render.
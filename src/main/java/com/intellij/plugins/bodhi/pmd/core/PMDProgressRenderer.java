@@ -17,6 +17,16 @@ public class PMDProgressRenderer extends AbstractRenderer {
         this.totalFiles = totalFiles;
     }
 
+    /**
+     * Counts files of the run as processed which are not analyzed, like files with kept results.
+     *
+     * @param skippedFiles the number of files which are not analyzed
+     */
+    public void skipFiles(int skippedFiles) {
+        processedFiles += skippedFiles;
+        progress.setFraction(processedFiles / (double) totalFiles);
+    }
+
     @Override
     public String defaultFileExtension() {
         return null;
@@ -1,25 +1,218 @@
 package com.intellij.plugins.bodhi.pmd.core;
 
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.util.Collections;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.stream.Stream;
 
+/**
+ * Locates the PMD incremental analysis cache files of a project. The cache files are stored under the IDE system
+ * directory, so they survive IDE restarts. Each cache file is keyed by the analysis configuration: rule sets,
+ * language versions and aux classpath, so analyses with different configurations, like the Java and Kotlin rule
+ * sets, don't invalidate each other's cache. A scan in several batches has a cache file per batch, as PMD only
+ * persists the entries of the analyzed files: the cache files of a configuration are used and evicted together, so
+ * the number of batches doesn't count against the limits. When the number of batches of a configuration changes, the
+ * cache files of the previous split are deleted. Least recently used configurations are evicted when the caches of
+ * the project exceed their size budget.
+ */
 public final class PMDProjectCacheFile {
-    private static final Map<Project, String> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Logger LOG = Logger.getInstance(PMDProjectCacheFile.class);
+    private static final String CACHE_FILE_PREFIX = "analysis-";
+    private static final String CACHE_FILE_SUFFIX = ".cache";
+    /**
+     * max total size of the cache files of one project
+     */
+    static final long MAX_TOTAL_SIZE_BYTES = 256L * 1024 * 1024;
+    /**
+     * max number of configurations of one project to keep the cache files of
+     */
+    static final int MAX_CONFIGURATIONS = 16;
 
-    public static String getOrCreate(Project project) {
-        return CACHE.computeIfAbsent(project, p -> {
+    /**
+     * Returns the path of the cache file for the given configuration and batch of the project, and evicts least
+     * recently used configurations when over budget.
+     *
+     * @param project the project
+     * @param configurationKey the key of the analysis configuration, see {@link #createConfigurationKey}
+     * @param batchCacheId the id of the batch of the scan, see {@link PMDScanScheduler.Batch#cacheId()}, empty when
+     *                     the scan is not split
+     * @return the absolute path of the cache file, which may not exist yet
+     */
+    public static String getOrCreate(Project project, String configurationKey, String batchCacheId) {
+        Path cacheDir = getCacheDir(project);
+        String configurationPrefix = CACHE_FILE_PREFIX + DigestUtils.sha1Hex(configurationKey) + "-";
+        String splitPrefix = configurationPrefix + getBatchCount(batchCacheId) + "-";
+        Path cacheFile = cacheDir.resolve(splitPrefix + getBatchPart(batchCacheId) + CACHE_FILE_SUFFIX);
+        try {
+            Files.createDirectories(cacheDir);
+            if (Files.exists(cacheFile)) {
+                // mark as recently used
+                Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            evict(cacheDir, configurationPrefix, splitPrefix);
+        } catch (IOException ioex) {
+            throw new UncheckedIOException(ioex);
+        }
+        return cacheFile.toAbsolutePath().toString();
+    }
+
+    /**
+     * Returns the number of batches of the scan of a batch: "n" of "i/n" or "i.j/n", 1 when the scan is not split.
+     */
+    private static String getBatchCount(String batchCacheId) {
+        int slash = batchCacheId.indexOf('/');
+        return (slash < 0) ? "1" : batchCacheId.substring(slash + 1);
+    }
+
+    /**
+     * Returns the part of a batch in its scan: "i" or "i.j" of "i/n" or "i.j/n", 0 when the scan is not split.
+     */
+    private static String getBatchPart(String batchCacheId) {
+        int slash = batchCacheId.indexOf('/');
+        return (slash < 0) ? "0" : batchCacheId.substring(0, slash);
+    }
+
+    /**
+     * Creates the key identifying an analysis configuration.
+     *
+     * @param ruleSetsFingerprint identifies the rule sets, including their contents
+     * @param languageVersions the language versions of the analysis
+     * @param auxClasspathFingerprint identifies the aux classpath used for type resolution
+     * @return the configuration key
+     */
+    public static String createConfigurationKey(String ruleSetsFingerprint, Collection<LanguageVersion> languageVersions, String auxClasspathFingerprint) {
+        List<String> versions = new ArrayList<>();
+        for (LanguageVersion languageVersion : languageVersions) {
+            versions.add(languageVersion.getTerseName());
+        }
+        versions.sort(null);
+        return ruleSetsFingerprint + "|" + String.join(",", versions) + "|" + auxClasspathFingerprint;
+    }
+
+    /**
+     * Deletes all cache files of the project.
+     *
+     * @param project the project
+     */
+    public static void clear(Project project) {
+        for (Path cacheFile : listCacheFiles(getCacheDir(project))) {
+            delete(cacheFile);
+        }
+    }
+
+    /**
+     * Returns the total size in bytes of the cache files of the project.
+     *
+     * @param project the project
+     * @return the total size of the cache files
+     */
+    public static long getTotalSize(Project project) {
+        long total = 0;
+        for (Path cacheFile : listCacheFiles(getCacheDir(project))) {
+            total += size(cacheFile);
+        }
+        return total;
+    }
+
+    static Path getCacheDir(Project project) {
+        return PathManager.getSystemDir().resolve("pmd").resolve("cache").resolve(project.getLocationHash());
+    }
+
+    /**
+     * Deletes the cache files of the configuration of another split, and the cache files of the least recently used
+     * other configurations while there are too many configurations or their cache files are too big in total. The
+     * configuration in use is never evicted.
+     */
+    private static void evict(Path cacheDir, String inUsePrefix, String inUseSplitPrefix) {
+        Map<String, List<Path>> configurationToFiles = new HashMap<>();
+        for (Path cacheFile : listCacheFiles(cacheDir)) {
+            String name = cacheFile.getFileName().toString();
+            if (name.startsWith(inUsePrefix) && !name.startsWith(inUseSplitPrefix)) {
+                delete(cacheFile);
+            } else {
+                configurationToFiles.computeIfAbsent(getConfigurationPrefix(name), prefix -> new ArrayList<>()).add(cacheFile);
+            }
+        }
+        List<Map.Entry<String, List<Path>>> configurations = new ArrayList<>(configurationToFiles.entrySet());
+        // the configuration in use first, then the most recently used
+        configurations.sort(Comparator.comparingLong((Map.Entry<String, List<Path>> e) ->
+                e.getKey().equals(inUsePrefix) ? Long.MAX_VALUE : lastModified(e.getValue())).reversed());
+        long totalSize = 0;
+        int count = 0;
+        for (Map.Entry<String, List<Path>> configuration : configurations) {
+            long size = 0;
+            for (Path cacheFile : configuration.getValue()) {
+                size += size(cacheFile);
+            }
+            if (count > 0 && (count >= MAX_CONFIGURATIONS || totalSize + size > MAX_TOTAL_SIZE_BYTES)) {
+                configuration.getValue().forEach(PMDProjectCacheFile::delete);
+            } else {
+                totalSize += size;
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Returns the part of the name of a cache file which identifies its configuration.
+     */
+    private static String getConfigurationPrefix(String cacheFileName) {
+        int dash = cacheFileName.indexOf('-', CACHE_FILE_PREFIX.length());
+        return (dash < 0) ? cacheFileName : cacheFileName.substring(0, dash + 1);
+    }
+
+    private static List<Path> listCacheFiles(Path cacheDir) {
+        List<Path> cacheFiles = new ArrayList<>();
+        if (Files.isDirectory(cacheDir)) {
+            try (Stream<Path> files = Files.list(cacheDir)) {
+                files.filter(p -> p.getFileName().toString().endsWith(CACHE_FILE_SUFFIX)).forEach(cacheFiles::add);
+            } catch (IOException e) {
+                LOG.warn("Failed to list PMD cache files in " + cacheDir, e);
+            }
+        }
+        return cacheFiles;
+    }
+
+    private static long lastModified(List<Path> files) {
+        long lastModified = 0;
+        for (Path file : files) {
             try {
-                return Files.createTempFile("pmd-intellij-cache", ".cache").toAbsolutePath().toString();
-            } catch (IOException ioex) {
-                throw new UncheckedIOException(ioex);
+                lastModified = Math.max(lastModified, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                // deleted meanwhile
             }
-        });
+        }
+        return lastModified;
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete PMD cache file " + file, e);
+        }
     }
 
     private PMDProjectCacheFile() {
@@ -9,9 +9,13 @@ import net.sourceforge.pmd.reporting.ViolationSuppressor;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
@@ -24,16 +28,44 @@ public class PMDResultAsTreeRenderer extends AbstractIncrementingRenderer {
 
     private static final Log log = LogFactory.getLog(PMDResultAsTreeRenderer.class);
     private static final String EXCEPTION_SWALLOWED = "Exception caught and swallowed: ";
-    private final List<PMDRuleSetEntryNode> pmdRuleResultNodes;
     private final PMDErrorBranchNode processingErrorsNode;
+    private final Map<String, String> ruleFingerprintToRuleSetPath;
+    private final PMDRuleFingerprints ruleFingerprints = new PMDRuleFingerprints();
+    private final Map<String, RuleSetResult> ruleSetPathToResult = new LinkedHashMap<>();
+    private final RuleSetResult defaultResult;
     private final UselessSuppressionsHelper uselessSupHelper;
-    private final Map<RuleKey, PMDRuleNode> ruleKeyToNodeMap = new TreeMap<>(); // order by priority and then name
 
-    public PMDResultAsTreeRenderer(List<PMDRuleSetEntryNode> pmdRuleSetResults, PMDErrorBranchNode errorsNode, String ruleSetPath) {
+    /**
+     * Creates a renderer which distributes the results of a single analysis run over the given rule sets.
+     *
+     * @param ruleSetPathToResults the result nodes per rule set path, filled by this renderer, in rule set order
+     * @param errorsNode the branch node to add processing errors to
+     * @param ruleFingerprintToRuleSetPath maps each rule fingerprint, see {@link PMDResultCollector#getRuleFingerprint(Rule)}, to the rule set path it was taken from
+     */
+    public PMDResultAsTreeRenderer(Map<String, List<PMDRuleSetEntryNode>> ruleSetPathToResults, PMDErrorBranchNode errorsNode, Map<String, String> ruleFingerprintToRuleSetPath) {
         super("pmdplugin", "PMD plugin renderer");
-        this.pmdRuleResultNodes = pmdRuleSetResults;
         processingErrorsNode = errorsNode;
-        uselessSupHelper = new UselessSuppressionsHelper(ruleSetPath);
+        this.ruleFingerprintToRuleSetPath = ruleFingerprintToRuleSetPath;
+        for (Map.Entry<String, List<PMDRuleSetEntryNode>> entry : ruleSetPathToResults.entrySet()) {
+            ruleSetPathToResult.put(entry.getKey(), new RuleSetResult(entry.getValue()));
+        }
+        if (ruleSetPathToResult.isEmpty()) {
+            throw new IllegalArgumentException("At least one rule set path is required");
+        }
+        defaultResult = ruleSetPathToResult.values().iterator().next();
+        // the rules of all rule sets ran together, so a suppression in any rule set may be used by any rule
+        Set<String> ruleNames = new HashSet<>();
+        for (String ruleFingerprint : ruleFingerprintToRuleSetPath.keySet()) {
+            String ruleId = PMDResultCollector.getRuleIdOfFingerprint(ruleFingerprint);
+            ruleNames.add(ruleId.substring(ruleId.indexOf(':') + 1));
+        }
+        uselessSupHelper = new UselessSuppressionsHelper(ruleNames);
+    }
+
+    private RuleSetResult resultFor(Rule rule) {
+        String ruleSetPath = ruleFingerprintToRuleSetPath.get(ruleFingerprints.of(rule));
+        RuleSetResult result = (ruleSetPath == null) ? null : ruleSetPathToResult.get(ruleSetPath);
+        return (result == null) ? defaultResult : result;
     }
 
     @Override
@@ -43,11 +75,12 @@ public class PMDResultAsTreeRenderer extends AbstractIncrementingRenderer {
             try {
                 RuleViolation ruleViolation = violations.next();
                 Rule rule = ruleViolation.getRule();
+                RuleSetResult result = resultFor(rule);
                 RuleKey key = new RuleKey(rule);
-                PMDRuleNode ruleNode = ruleKeyToNodeMap.get(key);
+                PMDRuleNode ruleNode = result.ruleKeyToNodeMap.get(key);
                 if (ruleNode == null) {
                     ruleNode = nodeFactory.createRuleNode(rule);
-                    ruleKeyToNodeMap.put(key, ruleNode);
+                    result.ruleKeyToNodeMap.put(key, ruleNode);
                 }
                 ruleNode.add(nodeFactory.createViolationLeafNode(new PMDViolation(ruleViolation)));
                 uselessSupHelper.storeRuleNameForMethod(ruleViolation);
@@ -57,11 +90,45 @@ public class PMDResultAsTreeRenderer extends AbstractIncrementingRenderer {
                 log.error(EXCEPTION_SWALLOWED, e);
             }
         }
-        for (PMDRuleNode ruleNode : ruleKeyToNodeMap.values()) {
-            if (ruleNode.getChildCount() > 0 && !pmdRuleResultNodes.contains(ruleNode)) {
-                pmdRuleResultNodes.add(ruleNode);
+    }
+
+    private void renderRuleNodes() {
+        for (Map.Entry<String, RuleSetResult> entry : ruleSetPathToResult.entrySet()) {
+            entry.getValue().ruleResultNodes.addAll(getRuleNodes(entry.getKey()));
+        }
+    }
+
+    /**
+     * Returns the rule nodes with violations of the rule set, ordered by priority and then name.
+     *
+     * @param ruleSetPath the path of the rule set
+     * @return the rule nodes with violations
+     */
+    List<PMDRuleNode> getRuleNodes(String ruleSetPath) {
+        List<PMDRuleNode> ruleNodes = new ArrayList<>();
+        RuleSetResult result = ruleSetPathToResult.get(ruleSetPath);
+        if (result != null) {
+            for (PMDRuleNode ruleNode : result.ruleKeyToNodeMap.values()) {
+                if (ruleNode.getChildCount() > 0) {
+                    ruleNodes.add(ruleNode);
+                }
             }
         }
+        return ruleNodes;
+    }
+
+    /**
+     * Renders the result of a single file, as kept from an earlier analysis or collected from the current one.
+     * Call {@link #end()} after all files are rendered.
+     *
+     * @param result the result of the file
+     */
+    public void renderFileResult(PMDFileResult result) {
+        if (!result.violations().isEmpty()) {
+            renderFileViolations(result.violations().iterator());
+        }
+        suppressed.addAll(result.suppressedViolations());
+        errors.addAll(result.processingErrors());
     }
 
     private void renderErrors() {
@@ -84,6 +151,7 @@ public class PMDResultAsTreeRenderer extends AbstractIncrementingRenderer {
 
     @Override
     public void end() {
+        renderRuleNodes();
         renderSuppressedViolations();
         renderUselessSuppressions();
         renderErrors();
@@ -92,14 +160,13 @@ public class PMDResultAsTreeRenderer extends AbstractIncrementingRenderer {
     private void renderSuppressedViolations() {
         if (!suppressed.isEmpty()) {
             PMDTreeNodeFactory nodeFactory = PMDTreeNodeFactory.getInstance();
-            PMDSuppressedBranchNode suppressedByNoPmdNode = nodeFactory.createSuppressedBranchNode("Suppressed violations by //NOPMD");
-            PMDSuppressedBranchNode suppressedByAnnotationNode = nodeFactory.createSuppressedBranchNode("Suppressed violations by Annotation");
             for (Report.SuppressedViolation suppressed : suppressed) {
                 try {
+                    RuleSetResult result = resultFor(suppressed.getRuleViolation().getRule());
                     if (suppressed.getSuppressor() == ViolationSuppressor.NOPMD_COMMENT_SUPPRESSOR) {
-                        suppressedByNoPmdNode.add(nodeFactory.createSuppressedLeafNode(new PMDSuppressedViolation(suppressed)));
+                        result.suppressedByNoPmdNode.add(nodeFactory.createSuppressedLeafNode(new PMDSuppressedViolation(suppressed)));
                     } else {
-                        suppressedByAnnotationNode.add(nodeFactory.createSuppressedLeafNode(new PMDSuppressedViolation(suppressed)));
+                        result.suppressedByAnnotationNode.add(nodeFactory.createSuppressedLeafNode(new PMDSuppressedViolation(suppressed)));
                         uselessSupHelper.storeRuleNameForMethod(suppressed);
                     }
                 }
@@ -108,19 +175,27 @@ public class PMDResultAsTreeRenderer extends AbstractIncrementingRenderer {
                     log.error(EXCEPTION_SWALLOWED, e);
                 }
             }
-            suppressedByAnnotationNode.calculateCounts();
-            if (suppressedByAnnotationNode.getSuppressedCount() > 0) {
-                pmdRuleResultNodes.add(suppressedByAnnotationNode);
-            }
-            suppressedByNoPmdNode.calculateCounts();
-            if (suppressedByNoPmdNode.getSuppressedCount() > 0) {
-                pmdRuleResultNodes.add(suppressedByNoPmdNode);
+            for (RuleSetResult result : ruleSetPathToResult.values()) {
+                result.suppressedByAnnotationNode.calculateCounts();
+                if (result.suppressedByAnnotationNode.getSuppressedCount() > 0) {
+                    result.ruleResultNodes.add(result.suppressedByAnnotationNode);
+                }
+                result.suppressedByNoPmdNode.calculateCounts();
+                if (result.suppressedByNoPmdNode.getSuppressedCount() > 0) {
+                    result.ruleResultNodes.add(result.suppressedByNoPmdNode);
+                }
             }
         }
     }
 
     private void renderUselessSuppressions() {
-        List<PMDUselessSuppression> uselessSuppressions = uselessSupHelper.findUselessSuppressions(ruleKeyToNodeMap);
+        for (RuleSetResult result : ruleSetPathToResult.values()) {
+            renderUselessSuppressions(result);
+        }
+    }
+
+    private void renderUselessSuppressions(RuleSetResult result) {
+        List<PMDUselessSuppression> uselessSuppressions = uselessSupHelper.findUselessSuppressions(result.ruleKeyToNodeMap);
         if (!uselessSuppressions.isEmpty()) {
             PMDTreeNodeFactory nodeFactory = PMDTreeNodeFactory.getInstance();
             PMDUselessSuppressionBranchNode uselessSuppressionNode = nodeFactory.createUselessSuppressionBranchNode("Useless suppressions");
@@ -135,7 +210,7 @@ public class PMDResultAsTreeRenderer extends AbstractIncrementingRenderer {
             }
             uselessSuppressionNode.calculateCounts();
             if (uselessSuppressionNode.getUselessSuppressionCount() > 0) {
-                pmdRuleResultNodes.add(uselessSuppressionNode);
+                result.ruleResultNodes.add(uselessSuppressionNode);
             }
         }
     }
@@ -147,4 +222,21 @@ public class PMDResultAsTreeRenderer extends AbstractIncrementingRenderer {
     @Override
     public void flush() {
     }
+
+    /**
+     * The result nodes and bookkeeping of one of the rule sets of the analysis.
+     */
+    private static class RuleSetResult {
+        private final List<PMDRuleSetEntryNode> ruleResultNodes;
+        private final Map<RuleKey, PMDRuleNode> ruleKeyToNodeMap = new TreeMap<>(); // order by priority and then name
+        private final PMDSuppressedBranchNode suppressedByNoPmdNode;
+        private final PMDSuppressedBranchNode suppressedByAnnotationNode;
+
+        RuleSetResult(List<PMDRuleSetEntryNode> ruleResultNodes) {
+            this.ruleResultNodes = ruleResultNodes;
+            PMDTreeNodeFactory nodeFactory = PMDTreeNodeFactory.getInstance();
+            suppressedByNoPmdNode = nodeFactory.createSuppressedBranchNode("Suppressed violations by //NOPMD");
+            suppressedByAnnotationNode = nodeFactory.createSuppressedBranchNode("Suppressed violations by Annotation");
+        }
+    }
 }
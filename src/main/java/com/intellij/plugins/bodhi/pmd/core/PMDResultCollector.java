@@ -2,9 +2,17 @@ package com.intellij.plugins.bodhi.pmd.core;
 
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.plugins.bodhi.pmd.ConfigOption;
 import com.intellij.plugins.bodhi.pmd.PMDProjectComponent;
 import com.intellij.plugins.bodhi.pmd.PMDUtil;
@@ -13,25 +21,35 @@ import com.intellij.plugins.bodhi.pmd.tree.PMDRuleSetEntryNode;
 import com.intellij.psi.PsiFile;
 import net.sourceforge.pmd.PMDConfiguration;
 import net.sourceforge.pmd.PmdAnalysis;
-import net.sourceforge.pmd.internal.util.IOUtil;
 import net.sourceforge.pmd.lang.Language;
 import net.sourceforge.pmd.lang.LanguageVersion;
 import net.sourceforge.pmd.lang.document.FileId;
 import net.sourceforge.pmd.lang.document.TextFile;
 import net.sourceforge.pmd.lang.document.TextFileContent;
+import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.lang.rule.RuleSet;
 import net.sourceforge.pmd.lang.rule.RuleSetLoadException;
 import net.sourceforge.pmd.lang.rule.RuleSetLoader;
+import net.sourceforge.pmd.properties.PropertyDescriptor;
 import net.sourceforge.pmd.renderers.Renderer;
 import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -44,114 +62,743 @@ import java.util.stream.Collectors;
 public class PMDResultCollector {
 
     private static final Logger LOG = Logger.getInstance(PMDResultCollector.class);
-    private static Report report;
-
     /**
-     * lazily loaded path to ruleset map, should only contain valid rule sets
+     * ratio of the max heap size to the max total source size of a batch
      */
-    private static final Map<String, RuleSet> pathToRuleSet = new HashMap<>();
-
+    private static final int BATCH_MEMORY_FACTOR = 64;
     /**
-     * Returns the report with pmd results
-     * @return the report with pmd results
+     * number of files to resolve the language version of in one read action
      */
-    public static Report getReport() {
-        return report;
-    }
+    private static final int RESOLVE_CHUNK_SIZE = 100;
 
-    public List<PMDRuleSetEntryNode> runPMDAndGetResultsForSingleFileNew(
+    /**
+     * Runs PMD on a single file for all given rule sets in one analysis, so the file is read and parsed once.
+     * Rules which occur in more than one of the rule sets are only run once, for the first rule set containing it.
+     * The combined rule sets and the PMD configuration are taken from the {@link PMDEditorAnalysisSession} of the
+     * project, and the file is analyzed in the calling thread.
+     *
+     * @param file the file to analyze
+     * @param languageVersion the language version of the file
+     * @param ruleSetPaths the paths of the rule sets to run
+     * @param comp the project component
+     * @param extraRenderer an additional renderer, may be null
+     * @return the result nodes per rule set path, in the order of the given rule set paths
+     */
+    public Map<String, List<PMDRuleSetEntryNode>> runPMDAndGetResultsForSingleFileNew(
             PsiFile file,
             LanguageVersion languageVersion,
-            String ruleSetPath,
+            List<String> ruleSetPaths,
             PMDProjectComponent comp,
             Renderer extraRenderer) {
 
-        return runPMDAndGetResultsInternal(
-                Map.of(languageVersion, Set.of(file)),
-                ruleSetPath,
-                comp,
-                extraRenderer);
+        final VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null) {
+            return Map.of();
+        }
+        final PMDEditorAnalysisSession session = PMDEditorAnalysisSession.getInstance(comp.getCurrentProject());
+        try (PMDEditorAnalysisSession.RuleSetsLease lease = session.acquireRuleSets(ruleSetPaths, comp)) {
+            if (lease.getRuleSets().isEmpty()) {
+                return Map.of();
+            }
+            final List<PMDFileResult> results = Collections.synchronizedList(new ArrayList<>());
+            // single file analyses don't use the persistent incremental analysis cache: PMD would replace the cached
+            // results of all other files by the result of that single file
+            analyze(Map.of(languageVersion, Set.of(virtualFile)), lease.getRuleSets(), Map.of(), comp, extraRenderer,
+                    null, null, false, session, (analyzedFile, result) -> results.add(result));
+
+            return buildResultNodes(ruleSetPaths, lease.getRuleFingerprintToRuleSetPath(), results, comp);
+        }
     }
 
-    public List<PMDRuleSetEntryNode> runPMDAndGetResults(
-            List<PsiFile> files,
-            String ruleSetPath,
+    /**
+     * Returns the result of a single file for all given rule sets from the results kept by project scans, see
+     * {@link PMDScanResultStore}, without analyzing it. There is only a result when the saved content of the file
+     * was analyzed with the same configuration and all rules of the rule sets which apply to it.
+     *
+     * @param file the file
+     * @param languageVersion the language version of the file
+     * @param ruleSetPaths the paths of the rule sets
+     * @param comp the project component
+     * @return the kept result, or null when the file has unsaved changes or was not analyzed with all rules
+     */
+    public @Nullable PMDFileResult getKeptResultForSingleFile(
+            VirtualFile file,
+            LanguageVersion languageVersion,
+            List<String> ruleSetPaths,
+            PMDProjectComponent comp) {
+        if (FileDocumentManager.getInstance().isFileModified(file)) {
+            return null;
+        }
+        final Project project = comp.getCurrentProject();
+        final PMDEditorAnalysisSession.CombinedRuleSets combined =
+                PMDEditorAnalysisSession.getInstance(project).getCombinedRuleSets(ruleSetPaths, comp);
+        final Map<String, Rule> applicableRules = getApplicableRules(
+                combined.getRuleSetScopes(), combined.getRuleFingerprints(), languageVersion, file);
+        if (applicableRules.isEmpty()) {
+            return null;
+        }
+        final PMDScanResultStore resultStore = PMDScanResultStore.getInstance(project);
+        final PMDScanResultStore.HashedContent content = resultStore.hashContent(file);
+        if (content == null) {
+            return null;
+        }
+        final Map<String, PMDKeptResult> keptRuleResults = resultStore.get(PMDScanResultStore.getResultKey(
+                PMDScanResultStore.createConfigurationKey(languageVersion, PMDClasspathService.getInstance(project).getFingerprint()),
+                content.hash()));
+        final FileId fileId = IDETextFile.createFileId(file);
+        final List<PMDFileResult> keptResults = new ArrayList<>();
+        for (Map.Entry<String, Rule> rule : applicableRules.entrySet()) {
+            PMDKeptResult keptResult = keptRuleResults.get(rule.getKey());
+            if (keptResult == null) {
+                return null;
+            }
+            keptResults.add(keptResult.toFileResult(rule.getValue(), fileId));
+        }
+        return PMDFileResult.merge(keptResults);
+    }
+
+    /**
+     * Runs PMD once on the given files for all given rule sets and splits the results per rule set.
+     * Rules which occur in more than one of the rule sets are only run once, for the first rule set containing it.
+     * <p>
+     * Only files with content which was not analyzed before for the same configuration are analyzed, the results of
+     * the other files are taken from the {@link PMDScanResultStore}.
+     *
+     * @param files the files to analyze
+     * @param ruleSetPaths the paths of the rule sets to run
+     * @param comp the project component
+     * @param extraRenderer an additional renderer, may be null. It only gets the files which are analyzed.
+     * @return the result nodes per rule set path, in the order of the given rule set paths
+     */
+    public Map<String, List<PMDRuleSetEntryNode>> runPMDAndGetResults(
+            List<VirtualFile> files,
+            List<String> ruleSetPaths,
             PMDProjectComponent comp,
             Renderer extraRenderer) {
-        if(files.isEmpty()) {
-            return List.of();
+        if (files.isEmpty()) {
+            return Map.of();
         }
-
-        return runPMDAndGetResultsInternal(
-                getHighestLanguageVersionAndFiles(groupPsiFilesBySupportedLanguageAndVersion(files)),
-                ruleSetPath,
-                comp,
-                extraRenderer);
+        return runPMDAndGetResults(List.of(new PMDScanScheduler.Batch(files, "")).iterator(), ruleSetPaths, comp,
+                extraRenderer, false);
     }
 
-    private List<PMDRuleSetEntryNode> runPMDAndGetResultsInternal(
-            Map<LanguageVersion, Set<PsiFile>> languageVersionFiles,
-            String ruleSetPath,
+    /**
+     * Runs PMD like {@link #runPMDAndGetResults(List, List, PMDProjectComponent, Renderer)} and shows the results
+     * in the result tree of the project while the analysis runs: the violations of each file are added to the tree
+     * shortly after the file is analyzed. Suppressed violations, useless suppressions and processing errors are
+     * added when all files are analyzed.
+     * <p>
+     * The files are analyzed in batches of at most {@link ConfigOption#BATCH_SIZE} files and
+     * {@link #getBatchMaxBytes()} bytes, so the memory used by the analysis is bounded by the batch, not by the
+     * number of files. The files the user likely works on are analyzed first, in leading batches of their own, and
+     * each other batch keeps its own incremental analysis cache, see {@link PMDScanScheduler}.
+     *
+     * @param files the files to analyze
+     * @param ruleSetPaths the paths of the rule sets to run
+     * @param comp the project component
+     * @param extraRenderer an additional renderer, may be null
+     */
+    public void runPMDAndShowResults(
+            List<VirtualFile> files,
+            List<String> ruleSetPaths,
             PMDProjectComponent comp,
             Renderer extraRenderer) {
+        if (files.isEmpty()) {
+            return;
+        }
+        final List<PMDScanScheduler.Batch> batches = PMDScanScheduler.createBatches(
+                comp.getCurrentProject(), files, getBatchSize(comp.getOptionToValue()), getBatchMaxBytes());
+        LOG.debug("Analyzing " + files.size() + " file(s) in " + batches.size() + " batch(es)");
+        runPMDAndGetResults(batches.iterator(), ruleSetPaths, comp, extraRenderer, true);
+    }
+
+    private Map<String, List<PMDRuleSetEntryNode>> runPMDAndGetResults(
+            Iterator<PMDScanScheduler.Batch> batches,
+            List<String> ruleSetPaths,
+            PMDProjectComponent comp,
+            Renderer extraRenderer,
+            boolean showWhileRunning) {
+        if (ruleSetPaths.isEmpty()) {
+            return Map.of();
+        }
+
+        final Map<String, String> ruleFingerprintToRuleSetPath = new HashMap<>();
+        final List<RuleSet> ruleSets = combineRuleSets(ruleSetPaths, ruleFingerprintToRuleSetPath,
+                comp.getResultPanel().getRootNode()::setRuleSetErrorMsg);
+        if (ruleSets.isEmpty()) {
+            return Map.of();
+        }
+        final String ruleSetsFingerprint = getRuleSetsFingerprint(ruleSetPaths);
+        final PMDRuleFingerprints ruleFingerprints = new PMDRuleFingerprints();
+        final List<PMDRuleSetScope> ruleSetScopes = ruleSets.stream().map(PMDRuleSetScope::new).toList();
+
+        final Map<String, List<PMDRuleSetEntryNode>> pmdRuleSetResults = createResultNodesMap(ruleSetPaths);
+        final PMDResultAsTreeRenderer treeRenderer = new PMDResultAsTreeRenderer(
+                pmdRuleSetResults,
+                comp.getResultPanel().getProcessingErrorsNode(),
+                ruleFingerprintToRuleSetPath);
+        final PMDResultTreePublisher publisher = showWhileRunning
+                ? new PMDResultTreePublisher(comp.getResultPanel(), treeRenderer, pmdRuleSetResults)
+                : null;
+        final List<PMDFileResult> results = Collections.synchronizedList(new ArrayList<>());
+        final Consumer<PMDFileResult> resultConsumer = (publisher != null) ? publisher::publish : results::add;
+
+        // one export of the whole run, the renderer collects the results of all batches
+        final PMDJsonExportingRenderer exportingRenderer = addExportRenderer(comp.getOptionToValue());
+        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        while (batches.hasNext() && (indicator == null || !indicator.isCanceled())) {
+            PMDScanScheduler.Batch batch = batches.next();
+            analyzeBatch(batch.files(), batch.cacheId(), ruleSets, ruleSetScopes, ruleSetsFingerprint,
+                    Set.copyOf(ruleFingerprintToRuleSetPath.keySet()), ruleFingerprints, comp, extraRenderer,
+                    exportingRenderer, showWhileRunning, resultConsumer);
+        }
+        final PMDScanResultStore resultStore = PMDScanResultStore.getInstance(comp.getCurrentProject());
+        if (indicator == null || !indicator.isCanceled()) {
+            resultStore.markScanFinished();
+        }
+        resultStore.save();
+        if (exportingRenderer != null && (indicator == null || !indicator.isCanceled())) {
+            String exportErrMsg = exportingRenderer.exportJsonData();
+            comp.getResultPanel().getRootNode().setExportErrorMsg(exportErrMsg);
+        }
+
+        if (publisher != null) {
+            publisher.finish();
+        } else {
+            for (PMDFileResult result : results) {
+                treeRenderer.renderFileResult(result);
+            }
+            treeRenderer.end();
+        }
+        return pmdRuleSetResults;
+    }
+
+    /**
+     * Analyzes a batch of files and passes the result of each file to the result consumer.
+     */
+    private void analyzeBatch(
+            List<VirtualFile> files,
+            @Nullable String batchCacheId,
+            List<RuleSet> ruleSets,
+            List<PMDRuleSetScope> ruleSetScopes,
+            String ruleSetsFingerprint,
+            Set<String> allRuleFingerprints,
+            PMDRuleFingerprints ruleFingerprints,
+            PMDProjectComponent comp,
+            Renderer extraRenderer,
+            @Nullable PMDJsonExportingRenderer exportingRenderer,
+            boolean backgroundScan,
+            Consumer<PMDFileResult> resultConsumer) {
+        Project project = comp.getCurrentProject();
+        Map<LanguageVersion, Set<VirtualFile>> languageVersionFiles =
+                getHighestLanguageVersionAndFiles(groupFilesBySupportedLanguageAndVersion(project, files));
+        String classpathFingerprint = PMDClasspathService.getInstance(project).getFingerprint();
+        String configurationKey = PMDProjectCacheFile.createConfigurationKey(
+                ruleSetsFingerprint, languageVersionFiles.keySet(), classpathFingerprint);
+        PMDScanResultStore resultStore = PMDScanResultStore.getInstance(project);
+
+        // skip the files to which no rule applies, before reading them. Take the kept results, select the files
+        // with content which was not analyzed with all applicable rules, or with unsaved changes, to analyze with
+        // the missing rules, grouped by the missing rules
+        final FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
+        final Map<Set<String>, Map<LanguageVersion, Set<VirtualFile>>> missingRulesToFiles = new HashMap<>();
+        final Map<VirtualFile, List<PMDFileResult>> fileToKeptResults = new HashMap<>();
+        final Map<VirtualFile, String> fileToResultKey = new HashMap<>();
+        final Map<VirtualFile, Long> fileToModificationStamp = new HashMap<>();
+        final Map<VirtualFile, Set<String>> fileToMissingRules = new HashMap<>();
+        // the content read to hash a file, which the analysis of the file takes instead of reading it again
+        final Map<VirtualFile, byte[]> fileToReadContent = new HashMap<>();
+        int fileCount = 0;
+        int fileCountToAnalyze = 0;
+        for (Map.Entry<LanguageVersion, Set<VirtualFile>> entry : languageVersionFiles.entrySet()) {
+            String fileConfigurationKey = PMDScanResultStore.createConfigurationKey(entry.getKey(), classpathFingerprint);
+            Map<String, Rule> languageVersionRules = getApplicableRules(ruleSetScopes, ruleFingerprints, entry.getKey(), null);
+            boolean hasFilePatterns = ruleSetScopes.stream().anyMatch(PMDRuleSetScope::hasFilePatterns);
+            for (VirtualFile virtualFile : entry.getValue()) {
+                Map<String, Rule> applicableRules = hasFilePatterns
+                        ? getApplicableRules(ruleSetScopes, ruleFingerprints, entry.getKey(), virtualFile)
+                        : languageVersionRules;
+                if (applicableRules.isEmpty()) {
+                    continue;
+                }
+                fileCount++;
+                // the result of unsaved content is not kept
+                boolean unsaved = fileDocumentManager.isFileModified(virtualFile);
+                long modificationStamp = unsaved ? 0 : virtualFile.getModificationStamp();
+                PMDScanResultStore.HashedContent content = unsaved ? null : resultStore.hashContent(virtualFile);
+                String resultKey = (content == null) ? null : PMDScanResultStore.getResultKey(fileConfigurationKey, content.hash());
+                Map<String, PMDKeptResult> keptRuleResults = (resultKey == null) ? Map.of() : resultStore.get(resultKey);
+                List<PMDFileResult> keptResults = new ArrayList<>();
+                Set<String> missingRules = new HashSet<>();
+                FileId fileId = keptRuleResults.isEmpty() ? null : IDETextFile.createFileId(virtualFile);
+                for (Map.Entry<String, Rule> rule : applicableRules.entrySet()) {
+                    PMDKeptResult keptResult = keptRuleResults.get(rule.getKey());
+                    if (keptResult != null) {
+                        keptResults.add(keptResult.toFileResult(rule.getValue(), fileId));
+                    } else {
+                        missingRules.add(rule.getKey());
+                    }
+                }
+                if (missingRules.isEmpty()) {
+                    resultConsumer.accept(PMDFileResult.merge(keptResults));
+                    resultStore.markScanned(virtualFile);
+                } else {
+                    // a file without kept results is analyzed with all rules, PMD itself skips the inapplicable ones
+                    Set<String> groupRules = keptResults.isEmpty() ? allRuleFingerprints : missingRules;
+                    missingRulesToFiles.computeIfAbsent(groupRules, r -> new HashMap<>())
+                            .computeIfAbsent(entry.getKey(), v -> new HashSet<>()).add(virtualFile);
+                    fileCountToAnalyze++;
+                    if (!keptResults.isEmpty()) {
+                        fileToKeptResults.put(virtualFile, keptResults);
+                    }
+                    if (content != null && content.content() != null) {
+                        fileToReadContent.put(virtualFile, content.content());
+                    }
+                    if (resultKey != null) {
+                        fileToResultKey.put(virtualFile, resultKey);
+                        fileToModificationStamp.put(virtualFile, modificationStamp);
+                        fileToMissingRules.put(virtualFile, missingRules);
+                    }
+                }
+            }
+        }
+        LOG.debug("Analyzing " + fileCountToAnalyze + " changed or new file(s) of " + fileCount
+                + " with applicable rules, in " + missingRulesToFiles.size() + " group(s) of missing rules");
+        if (extraRenderer instanceof PMDProgressRenderer progressRenderer) {
+            progressRenderer.skipFiles(files.size() - fileCountToAnalyze);
+        }
+
+        final Map<VirtualFile, PMDFileResult> freshResults = new ConcurrentHashMap<>();
+        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        for (Map.Entry<Set<String>, Map<LanguageVersion, Set<VirtualFile>>> entry : missingRulesToFiles.entrySet()) {
+            if (indicator != null && indicator.isCanceled()) {
+                break;
+            }
+            boolean allRules = entry.getKey().size() == allRuleFingerprints.size();
+            // PMD only persists the incremental analysis cache entries of the analyzed files, so only use it
+            // when analyzing all files with all rules, not to lose the entries of the other files
+            // each batch of a scan has an incremental analysis cache file of its own, as PMD only persists the
+            // cache entries of the analyzed files
+            analyze(entry.getValue(), allRules ? ruleSets : filterRules(ruleSets, ruleFingerprints, entry.getKey()),
+                    fileToReadContent, comp, extraRenderer, exportingRenderer,
+                    (batchCacheId != null && allRules && fileCountToAnalyze == fileCount)
+                            ? PMDProjectCacheFile.getOrCreate(project, configurationKey, batchCacheId) : null,
+                    backgroundScan, null,
+                    (virtualFile, result) -> {
+                        freshResults.put(virtualFile, result);
+                        resultStore.markScanned(virtualFile);
+                        List<PMDFileResult> keptResults = fileToKeptResults.get(virtualFile);
+                        if (keptResults == null) {
+                            resultConsumer.accept(result);
+                        } else {
+                            List<PMDFileResult> parts = new ArrayList<>(keptResults);
+                            parts.add(result);
+                            resultConsumer.accept(PMDFileResult.merge(parts));
+                        }
+                    });
+        }
+
+        // keep the fresh results per rule by the hashed content, unless the file changed since it was hashed. Results
+        // with processing errors are not kept, the rules may not have seen the whole file. The violations refer to
+        // the copies of the rules PMD ran in this batch.
+        final PMDRuleFingerprints violationRuleFingerprints = new PMDRuleFingerprints();
+        fileToResultKey.forEach((virtualFile, resultKey) -> {
+            PMDFileResult freshResult = freshResults.get(virtualFile);
+            if (freshResult != null && freshResult.processingErrors().isEmpty() && virtualFile.isValid()
+                    && virtualFile.getModificationStamp() == fileToModificationStamp.get(virtualFile)
+                    && !fileDocumentManager.isFileModified(virtualFile)) {
+                resultStore.put(resultKey, splitByRule(freshResult, violationRuleFingerprints, fileToMissingRules.get(virtualFile)),
+                        allRuleFingerprints);
+            }
+        });
+    }
+
+    /**
+     * Returns the rules which apply to files of the language version by fingerprint, by the languages and versions
+     * of the rules and the file patterns of their rule sets. Without file, only rule sets without file patterns are
+     * taken into account.
+     */
+    private static Map<String, Rule> getApplicableRules(
+            List<PMDRuleSetScope> ruleSetScopes,
+            PMDRuleFingerprints ruleFingerprints,
+            LanguageVersion languageVersion,
+            @Nullable VirtualFile file) {
+        Map<String, Rule> applicableRules = new HashMap<>();
+        FileId fileId = null;
+        for (PMDRuleSetScope scope : ruleSetScopes) {
+            List<Rule> rules = scope.getRules(languageVersion);
+            if (rules.isEmpty()) {
+                continue;
+            }
+            if (scope.hasFilePatterns()) {
+                if (file == null) {
+                    continue;
+                }
+                if (fileId == null) {
+                    fileId = IDETextFile.createFileId(file);
+                }
+                if (!scope.appliesTo(fileId)) {
+                    continue;
+                }
+            }
+            for (Rule rule : rules) {
+                applicableRules.putIfAbsent(ruleFingerprints.of(rule), rule);
+            }
+        }
+        return applicableRules;
+    }
+
+    /**
+     * Returns whether any rule of the rule set at the path applies to the file: a rule of the language of the file
+     * which supports its version, in a rule set of which the file patterns select the file. Invalid rule sets are
+     * considered applicable, so the analysis reports them.
+     *
+     * @param ruleSetPath the path of the rule set
+     * @param languageVersion the language version of the file
+     * @param file the file
+     * @return whether the rule set applies to the file
+     */
+    public static boolean isRuleSetApplicable(String ruleSetPath, LanguageVersion languageVersion, VirtualFile file) {
+        PMDRuleSetScope scope;
+        try {
+            scope = PMDRuleSetCache.getScope(ruleSetPath, PMDResultCollector::loadRuleSet);
+        } catch (InvalidRuleSetException e) {
+            return true;
+        }
+        return !scope.getRules(languageVersion).isEmpty()
+                && (!scope.hasFilePatterns() || scope.appliesTo(IDETextFile.createFileId(file)));
+    }
+
+    /**
+     * Returns the max number of files of a batch from the options, no limit for 0 or less.
+     */
+    private static int getBatchSize(Map<ConfigOption, String> options) {
+        String batchSize = options.get(ConfigOption.BATCH_SIZE);
+        try {
+            int size = Integer.parseInt((batchSize == null || batchSize.isBlank()) ? ConfigOption.BATCH_SIZE.getDefaultValue() : batchSize.trim());
+            return (size <= 0) ? Integer.MAX_VALUE : size;
+        } catch (NumberFormatException e) {
+            LOG.warn("Invalid batch size '" + batchSize + "', using the default");
+            return Integer.parseInt(ConfigOption.BATCH_SIZE.getDefaultValue());
+        }
+    }
+
+    /**
+     * Returns the memory budget of a batch, as max total length of its files: the syntax trees, symbol tables and
+     * type information of the analysis take a multiple of the source size.
+     */
+    static long getBatchMaxBytes() {
+        return Runtime.getRuntime().maxMemory() / BATCH_MEMORY_FACTOR;
+    }
+
+    /**
+     * Runs PMD on the files for the rule sets, and passes the result of each file to the result consumer.
+     * When the progress indicator of the calling thread is canceled, the remaining files are skipped and the
+     * method returns normally, the consumer got the results of the files analyzed so far.
+     *
+     * @param fileToReadContent the saved content of files which was already read, to analyze instead of reading
+     *                          the files again
+     * @param exportingRenderer the renderer which collects the results to export for the whole run, may be null
+     * @param analysisCacheFile the path of the persistent incremental analysis cache file, see
+     *                          {@link PMDProjectCacheFile#getOrCreate}, or null to not use the cache
+     * @param backgroundScan whether the analysis is a project scan in a background task. It starts when the IDE is
+     *                       not indexing, so its threads are set up for smart mode, and pauses while the IDE is
+     *                       indexing. Other analyses, like the check-in scan the user waits for, don't wait.
+     * @param editorSession the session to take the PMD configuration from for an in-editor analysis, or null to
+     *                      create the configuration for this analysis
+     */
+    private void analyze(
+            Map<LanguageVersion, Set<VirtualFile>> languageVersionFiles,
+            List<RuleSet> ruleSets,
+            Map<VirtualFile, byte[]> fileToReadContent,
+            PMDProjectComponent comp,
+            Renderer extraRenderer,
+            @Nullable PMDJsonExportingRenderer exportingRenderer,
+            @Nullable String analysisCacheFile,
+            boolean backgroundScan,
+            @Nullable PMDEditorAnalysisSession editorSession,
+            BiConsumer<VirtualFile, PMDFileResult> resultConsumer) {
 
         Map<ConfigOption, String> options = comp.getOptionToValue();
         Project project = comp.getCurrentProject();
+        DumbService dumbService = DumbService.getInstance(project);
+        final int fileCount = languageVersionFiles.values().stream().mapToInt(Set::size).sum();
 
         Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
 
         final long startMs = System.currentTimeMillis();
+        // the indicator of the calling thread, the analysis of the files runs in PMD worker threads
+        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
 
-        final List<PMDRuleSetEntryNode> pmdRuleSetResults = new ArrayList<>();
+        PMDClasspathService.ClassLoaderLease classLoaderLease = null;
+        PMDAnalysisThrottle throttle = null;
         try {
-            PMDConfiguration pmdConfig = createPmdConfig(
-                    ruleSetPath,
-                    options.get(ConfigOption.THREADS),
+            if (backgroundScan) {
+                PMDFileResultListener.waitForSmartMode(dumbService, indicator);
+            }
+            classLoaderLease = PMDClasspathService.getInstance(project).acquireClassLoader();
+            ClassLoader auxClassLoader = classLoaderLease.getClassLoader();
+            Supplier<PMDConfiguration> configFactory = () -> createPmdConfig(
+                    // a single file runs in the calling thread, without starting a thread pool
+                    (fileCount == 1) ? "1" : options.get(ConfigOption.THREADS),
                     project,
-                    new ArrayList<>(languageVersionFiles.keySet()));
-
-            PMDResultAsTreeRenderer treeRenderer = new PMDResultAsTreeRenderer(
-                    pmdRuleSetResults,
-                    comp.getResultPanel().getProcessingErrorsNode(),
-                    ruleSetPath);
-            treeRenderer.setWriter(IOUtil.createWriter(pmdConfig.getReportFilePath().toString()));
-            treeRenderer.start();
+                    new ArrayList<>(languageVersionFiles.keySet()),
+                    auxClassLoader,
+                    analysisCacheFile);
+            PMDConfiguration pmdConfig = (editorSession == null)
+                    ? configFactory.get()
+                    : editorSession.getConfiguration(languageVersionFiles.keySet(), auxClassLoader, configFactory);
 
             List<Renderer> renderers = new LinkedList<>();
-            renderers.add(treeRenderer);
-
-            PMDJsonExportingRenderer exportingRenderer = addExportRenderer(options);
             if (exportingRenderer != null) renderers.add(exportingRenderer);
             if (extraRenderer != null) renderers.add(extraRenderer);
 
             try (PmdAnalysis pmd = PmdAnalysis.create(pmdConfig)) {
+                pmd.addRuleSets(ruleSets);
                 languageVersionFiles.forEach((languageVersion, files) ->
                         files.forEach(file ->
                                 // The IDE might not have saved the contents of the file to the disk yet
-                                pmd.files().addFile(new IDETextFile(languageVersion, file))));
+                                pmd.files().addFile(new IDETextFile(languageVersion, file, fileToReadContent.get(file)))));
 
                 pmd.addRenderers(renderers);
-                report = pmd.performAnalysisAndCollectReport();
-            }
-
-            if (exportingRenderer != null) {
-                String exportErrMsg = exportingRenderer.exportJsonData();
-                comp.getResultPanel().getRootNode().setExportErrorMsg(exportErrMsg);
+                if (fileCount > 1) {
+                    throttle = PMDAnalysisThrottle.create(options, pmdConfig.getThreads());
+                }
+                pmd.addListener(new PMDFileResultListener(indicator, throttle,
+                        backgroundScan ? dumbService : null, resultConsumer));
+                pmd.performAnalysis();
             }
         } catch (Exception e) {
-            LOG.error("Failed to process", e);
+            if (isCanceled(e)) {
+                // keep the results of the files analyzed so far
+                LOG.debug("PMD processing canceled");
+            } else {
+                LOG.error("Failed to process", e);
+            }
+        } finally {
+            if (throttle != null) {
+                throttle.close();
+            }
+            if (classLoaderLease != null) {
+                classLoaderLease.close();
+            }
         }
         LOG.debug("Finished pmd processing, took " + (System.currentTimeMillis() - startMs) + "ms");
+    }
+
+    private static boolean isCanceled(Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof ProcessCanceledException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the result tree nodes per rule set from the results of the files.
+     *
+     * @param ruleSetPaths the paths of the rule sets which were run
+     * @param ruleFingerprintToRuleSetPath the rule set path each rule which was run is taken from, by fingerprint
+     * @param results the results of the files
+     * @param comp the project component
+     * @return the result nodes per rule set path, in the order of the given rule set paths
+     */
+    private static Map<String, List<PMDRuleSetEntryNode>> buildResultNodes(
+            List<String> ruleSetPaths,
+            Map<String, String> ruleFingerprintToRuleSetPath,
+            Collection<PMDFileResult> results,
+            PMDProjectComponent comp) {
+        final Map<String, List<PMDRuleSetEntryNode>> pmdRuleSetResults = createResultNodesMap(ruleSetPaths);
+        PMDResultAsTreeRenderer treeRenderer = new PMDResultAsTreeRenderer(
+                pmdRuleSetResults,
+                comp.getResultPanel().getProcessingErrorsNode(),
+                ruleFingerprintToRuleSetPath);
+        for (PMDFileResult result : results) {
+            treeRenderer.renderFileResult(result);
+        }
+        treeRenderer.end();
+        return pmdRuleSetResults;
+    }
 
+    private static Map<String, List<PMDRuleSetEntryNode>> createResultNodesMap(List<String> ruleSetPaths) {
+        final Map<String, List<PMDRuleSetEntryNode>> pmdRuleSetResults = new LinkedHashMap<>();
+        for (String ruleSetPath : ruleSetPaths) {
+            pmdRuleSetResults.put(ruleSetPath, new ArrayList<>());
+        }
         return pmdRuleSetResults;
     }
 
-    private Map<Language, Map<LanguageVersion, List<PsiFile>>> groupPsiFilesBySupportedLanguageAndVersion(
-            final List<PsiFile> files) {
+    /**
+     * Combines the rule sets at the given paths into rule sets without duplicate rules: a rule which is in more
+     * than one rule set with the same definition, see {@link #getRuleFingerprint}, is only kept in the first rule
+     * set containing it. Rules with the same name but a different definition are all kept. Invalid rule sets are
+     * skipped and reported to the error reporter.
+     *
+     * @param ruleSetPaths the paths of the rule sets to combine
+     * @param ruleFingerprintToRuleSetPath filled with the rule set path each retained rule is taken from, by fingerprint
+     * @param errorReporter gets the error message of each invalid rule set, called in the calling thread
+     * @return the rule sets to run, each with copies of the retained rules
+     */
+    static List<RuleSet> combineRuleSets(List<String> ruleSetPaths, Map<String, String> ruleFingerprintToRuleSetPath, Consumer<String> errorReporter) {
+        List<RuleSet> ruleSets = new ArrayList<>();
+        for (String ruleSetPath : ruleSetPaths) {
+            RuleSet ruleSet;
+            try {
+                ruleSet = getRuleSet(ruleSetPath);
+            } catch (InvalidRuleSetException e) {
+                String msg = (e.getCause() == null) ? e.getMessage() : e.getCause().getMessage();
+                LOG.warn("Skipping invalid rule set " + ruleSetPath + ": " + msg);
+                errorReporter.accept(PMDUtil.getBareFileNameFromPath(ruleSetPath) + ": " + msg);
+                continue;
+            }
+            List<Rule> rules = new ArrayList<>();
+            for (Rule rule : ruleSet.getRules()) {
+                if (ruleFingerprintToRuleSetPath.putIfAbsent(getRuleFingerprint(rule), ruleSetPath) == null) {
+                    rules.add(rule.deepCopy()); // rule instances are stateful, don't share the cached ones
+                }
+            }
+            if (!rules.isEmpty()) {
+                ruleSets.add(RuleSet.create(ruleSet.getName(), ruleSet.getDescription(), ruleSet.getFileName(),
+                        ruleSet.getFileExclusions(), ruleSet.getFileInclusions(), rules));
+            }
+        }
+        return ruleSets;
+    }
+
+    /**
+     * Returns a fingerprint of the rule sets at the given paths, which changes when a path is added or removed,
+     * or when the contents of a rule set change.
+     *
+     * @param ruleSetPaths the paths of the rule sets
+     * @return the fingerprint of the rule sets
+     */
+    public static String getRuleSetsFingerprint(List<String> ruleSetPaths) {
+        List<String> parts = new ArrayList<>();
+        for (String ruleSetPath : ruleSetPaths) {
+            try {
+                parts.add(ruleSetPath + "@" + getRuleSet(ruleSetPath).getChecksum());
+            } catch (InvalidRuleSetException e) {
+                parts.add(ruleSetPath + "@invalid");
+            }
+        }
+        parts.sort(null);
+        return String.join(";", parts);
+    }
+
+    /**
+     * Returns the id of a rule: its language and name. Rule sets may define different rules with the same id, they
+     * are told apart by their fingerprint, see {@link #getRuleFingerprint}.
+     *
+     * @param rule the rule
+     * @return the id of the rule
+     */
+    static String getRuleId(Rule rule) {
+        return rule.getLanguage().getId() + ":" + rule.getName();
+    }
+
+    /**
+     * Returns the fingerprint of a rule: its id with a hash of its class, priority, message, language versions
+     * and property values. It changes when the rule is changed in its rule set, so its results are not reused.
+     *
+     * @param rule the rule
+     * @return the fingerprint of the rule
+     */
+    static String getRuleFingerprint(Rule rule) {
+        Map<String, String> properties = new TreeMap<>();
+        for (Map.Entry<PropertyDescriptor<?>, Object> entry : rule.getPropertiesByPropertyDescriptor().entrySet()) {
+            properties.put(entry.getKey().name(), String.valueOf(entry.getValue()));
+        }
+        String definition = rule.getRuleClass() + "|" + rule.getPriority().getPriority() + "|" + rule.getMessage()
+                + "|" + rule.getMinimumLanguageVersion() + "|" + rule.getMaximumLanguageVersion() + "|" + properties;
+        return getRuleId(rule) + "@" + DigestUtils.sha1Hex(definition);
+    }
+
+    /**
+     * Returns the rule id of a rule fingerprint.
+     *
+     * @param ruleFingerprint the fingerprint of a rule, see {@link #getRuleFingerprint}
+     * @return the id of the rule
+     */
+    static String getRuleIdOfFingerprint(String ruleFingerprint) {
+        return ruleFingerprint.substring(0, ruleFingerprint.lastIndexOf('@'));
+    }
+
+    /**
+     * Returns rule sets with only the rules with the given fingerprints, rule sets without any of them are left out.
+     */
+    private static List<RuleSet> filterRules(List<RuleSet> ruleSets, PMDRuleFingerprints fingerprints, Set<String> ruleFingerprints) {
+        List<RuleSet> filtered = new ArrayList<>();
+        for (RuleSet ruleSet : ruleSets) {
+            List<Rule> rules = new ArrayList<>();
+            for (Rule rule : ruleSet.getRules()) {
+                if (ruleFingerprints.contains(fingerprints.of(rule))) {
+                    rules.add(rule);
+                }
+            }
+            if (!rules.isEmpty()) {
+                filtered.add(RuleSet.create(ruleSet.getName(), ruleSet.getDescription(), ruleSet.getFileName(),
+                        ruleSet.getFileExclusions(), ruleSet.getFileInclusions(), rules));
+            }
+        }
+        return filtered;
+    }
+
+    /**
+     * Splits the result of a file into the results per rule which was run, rules without findings get an empty
+     * result.
+     */
+    private static Map<String, PMDFileResult> splitByRule(PMDFileResult result, PMDRuleFingerprints fingerprints, Set<String> ruleFingerprints) {
+        Map<String, List<RuleViolation>> violations = new HashMap<>();
+        for (RuleViolation violation : result.violations()) {
+            violations.computeIfAbsent(fingerprints.of(violation.getRule()), r -> new ArrayList<>()).add(violation);
+        }
+        Map<String, List<Report.SuppressedViolation>> suppressedViolations = new HashMap<>();
+        for (Report.SuppressedViolation suppressed : result.suppressedViolations()) {
+            suppressedViolations.computeIfAbsent(fingerprints.of(suppressed.getRuleViolation().getRule()), r -> new ArrayList<>()).add(suppressed);
+        }
+        Map<String, PMDFileResult> ruleResults = new HashMap<>();
+        for (String ruleFingerprint : ruleFingerprints) {
+            ruleResults.put(ruleFingerprint, new PMDFileResult(
+                    violations.getOrDefault(ruleFingerprint, List.of()),
+                    suppressedViolations.getOrDefault(ruleFingerprint, List.of()),
+                    List.of()));
+        }
+        return ruleResults;
+    }
+
+    /**
+     * Groups the files by language and version. The versions are resolved in non-blocking read actions of
+     * {@link #RESOLVE_CHUNK_SIZE} files, so a write action, like typing, never waits for more than a chunk: it
+     * cancels the read action of the chunk, which is restarted after the write action.
+     */
+    private Map<Language, Map<LanguageVersion, List<VirtualFile>>> groupFilesBySupportedLanguageAndVersion(
+            final Project project,
+            final List<VirtualFile> files) {
         final ManagedLanguageVersionResolver resolver = new ManagedLanguageVersionResolver();
 
-        return files.stream()
-                .collect(Collectors.groupingBy(resolver::resolveLanguage))
+        final Map<Optional<LanguageVersion>, List<VirtualFile>> languageVersionToFiles = new HashMap<>();
+        // a thread which may hold the read lock already, like the EDT, can't wait for a non-blocking read action
+        final boolean canRunNonBlocking = !ApplicationManager.getApplication().isReadAccessAllowed();
+        for (int from = 0; from < files.size(); from += RESOLVE_CHUNK_SIZE) {
+            final List<VirtualFile> chunk = files.subList(from, Math.min(files.size(), from + RESOLVE_CHUNK_SIZE));
+            final Callable<Map<Optional<LanguageVersion>, List<VirtualFile>>> resolveChunk = () -> chunk.stream()
+                    .filter(VirtualFile::isValid)
+                    .collect(Collectors.groupingBy(file -> resolver.resolveLanguage(project, file)));
+            Map<Optional<LanguageVersion>, List<VirtualFile>> chunkResult;
+            try {
+                chunkResult = canRunNonBlocking
+                        ? ReadAction.nonBlocking(resolveChunk).expireWith(project).executeSynchronously()
+                        : resolveChunk.call();
+            } catch (ProcessCanceledException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to resolve the language versions of the files", e);
+            }
+            chunkResult.forEach((languageVersion, chunkFiles) ->
+                    languageVersionToFiles.computeIfAbsent(languageVersion, v -> new ArrayList<>()).addAll(chunkFiles));
+        }
+        return languageVersionToFiles
                 .entrySet()
                 .stream()
                 .filter(e -> e.getKey().isPresent())
@@ -159,9 +806,9 @@ public class PMDResultCollector {
                         Collectors.toMap(e -> e.getKey().orElseThrow(), Map.Entry::getValue)));
     }
 
-    private Map<LanguageVersion, Set<PsiFile>> getHighestLanguageVersionAndFiles(
-            final Map<Language, Map<LanguageVersion, List<PsiFile>>> groupPsiFilesByLanguageAndVersion) {
-        return groupPsiFilesByLanguageAndVersion.entrySet()
+    private Map<LanguageVersion, Set<VirtualFile>> getHighestLanguageVersionAndFiles(
+            final Map<Language, Map<LanguageVersion, List<VirtualFile>>> groupFilesByLanguageAndVersion) {
+        return groupFilesByLanguageAndVersion.entrySet()
                 .stream()
                 .collect(Collectors.toMap(
                         e -> e.getValue()
@@ -194,20 +841,24 @@ public class PMDResultCollector {
 
     @NotNull
     private PMDConfiguration createPmdConfig(
-            String ruleSets,
             String optionThreads,
             Project project,
-            List<LanguageVersion> languageVersions
-    ) throws IOException {
+            List<LanguageVersion> languageVersions,
+            ClassLoader auxClassLoader,
+            @Nullable String analysisCacheFile
+    ) {
         PMDConfiguration pmdConfig = new PMDConfiguration();
 
         pmdConfig.setDefaultLanguageVersions(languageVersions);
-        pmdConfig.prependAuxClasspath(PMDUtil.getFullClassPathForAllModules(project));
+        // the long-lived class loader on the aux classpath keeps opened jars and resolved classes between runs
+        pmdConfig.setClassLoader(auxClassLoader);
 
-        pmdConfig.addRuleSet(ruleSets);
-        pmdConfig.setReportFile(File.createTempFile("pmd", "report").toPath());
         pmdConfig.setShowSuppressedViolations(true);
-        pmdConfig.setAnalysisCacheLocation(PMDProjectCacheFile.getOrCreate(project));
+        if (analysisCacheFile == null) {
+            pmdConfig.setIgnoreIncrementalAnalysis(true);
+        } else {
+            pmdConfig.setAnalysisCacheLocation(analysisCacheFile);
+        }
 
         if (optionThreads == null || optionThreads.isEmpty()) {
             pmdConfig.setThreads(PMDUtil.AVAILABLE_PROCESSORS);
@@ -229,12 +880,13 @@ public class PMDResultCollector {
         Thread.currentThread().setContextClassLoader(PMDResultCollector.class.getClassLoader());
 
         try {
+            long generation = PMDRuleSetCache.startLoad(path);
             RuleSet rs = new RuleSetLoader().loadFromResource(path);
             if (rs.getRules().isEmpty()) {
                 return "No rules found";
             }
 
-            pathToRuleSet.put(path, rs);
+            PMDRuleSetCache.put(path, rs, generation);
             return "";
         } catch (RuleSetLoadException e) {
             return e.getMessage();
@@ -269,17 +921,21 @@ public class PMDResultCollector {
     }
 
     /**
-     * Get a ruleSet from memory, or load it from resource when not loaded yet
+     * Get a ruleSet from memory, or load it from resource when not loaded yet. Thread-safe: concurrent requests
+     * for the same path result in a single load.
      * @param path the path of the ruleSet
      */
     public static RuleSet getRuleSet(String path) throws InvalidRuleSetException {
-        RuleSet rs = pathToRuleSet.get(path);
-        if (rs == null) {
-            rs = loadRuleSet(path);
-            // no exception, loading succeeds
-            pathToRuleSet.put(path, rs);
-        }
-        return rs;
+        return PMDRuleSetCache.get(path, PMDResultCollector::loadRuleSet);
+    }
+
+    /**
+     * Adds a listener which is run when a loaded rule set is dropped because its file changed.
+     *
+     * @param listener the listener
+     */
+    public static void addRuleSetInvalidationListener(Runnable listener) {
+        PMDRuleSetCache.addInvalidationListener(listener);
     }
 
     public static RuleSet loadRuleSet(String path) throws InvalidRuleSetException {
@@ -310,11 +966,24 @@ public class PMDResultCollector {
     static class IDETextFile implements TextFile {
         private static final Logger LOG = Logger.getInstance(IDETextFile.class);
         private final LanguageVersion languageVersion;
-        private final PsiFile file;
+        private final VirtualFile file;
+        private final byte @Nullable [] readContent;
+
+        public IDETextFile(LanguageVersion languageVersion, VirtualFile file) {
+            this(languageVersion, file, null);
+        }
 
-        public IDETextFile(LanguageVersion languageVersion, PsiFile file) {
+        /**
+         * @param readContent the saved content of the file when it was already read, like to hash it, or null
+         */
+        IDETextFile(LanguageVersion languageVersion, VirtualFile file, byte @Nullable [] readContent) {
             this.languageVersion = languageVersion;
             this.file = file;
+            this.readContent = readContent;
+        }
+
+        VirtualFile getVirtualFile() {
+            return file;
         }
 
         @Override
@@ -324,13 +993,17 @@ public class PMDResultCollector {
 
         @Override
         public FileId getFileId() {
+            return createFileId(file);
+        }
+
+        static FileId createFileId(VirtualFile file) {
             try {
-                return FileId.fromPath(file.getVirtualFile().toNioPath());
+                return FileId.fromPath(file.toNioPath());
             } catch (Exception ex) {
                 // Sometimes files are not physically present on the disk and are just available in memory
                 LOG.debug("Failed to get NioPath for file " + file + ". Falling back to URI", ex);
                 try {
-                    return FileId.fromURI(file.getVirtualFile().getUrl());
+                    return FileId.fromURI(file.getUrl());
                 } catch (Exception ex2) {
                     LOG.info("Failed to get URI for file " + file + ". Falling back to temp file", ex2);
                     // FiledId.INVALID is not working as it results in crashes when trying to parse the file-path
@@ -344,11 +1017,34 @@ public class PMDResultCollector {
             }
         }
 
+        /**
+         * Reads the contents without building the PSI tree of the file. The contents of a file with unsaved changes
+         * are taken from the immutable text of its document. Other files are taken from the content which was
+         * already read, or streamed from their virtual file. A canceled analysis stops here, before the file is
+         * parsed: PMD reports the cancellation as processing error, which {@link PMDFileResultListener} rethrows.
+         */
         @Override
-        public TextFileContent readContents() {
+        public TextFileContent readContents() throws IOException {
+            ProgressManager.checkCanceled();
+            FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
+            Document document = fileDocumentManager.isFileModified(file)
+                    ? runReadAction(() -> fileDocumentManager.getCachedDocument(file))
+                    : null;
+            if (document != null) {
+                // an immutable snapshot, no copy of the text
+                return TextFileContent.fromCharSeq(runReadAction(document::getImmutableCharSequence));
+            }
+            if (readContent != null) {
+                return TextFileContent.fromInputStream(new ByteArrayInputStream(readContent), file.getCharset());
+            }
+            try (InputStream inputStream = file.getInputStream()) {
+                return TextFileContent.fromInputStream(inputStream, file.getCharset());
+            }
+        }
+
+        private static <T> T runReadAction(Computable<T> action) {
             final Application application = ApplicationManager.getApplication();
-            final Computable<TextFileContent> action = () -> TextFileContent.fromCharSeq(file.getText());
-            if(application.isReadAccessAllowed()) {
+            if (application.isReadAccessAllowed()) {
                 return action.compute();
             }
             return application.runReadAction(action);
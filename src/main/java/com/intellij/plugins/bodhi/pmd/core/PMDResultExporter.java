@@ -0,0 +1,118 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.plugins.bodhi.pmd.tree.PMDErrorNode;
+import com.intellij.plugins.bodhi.pmd.tree.PMDRootNode;
+import com.intellij.plugins.bodhi.pmd.tree.PMDSuppressedNode;
+import com.intellij.plugins.bodhi.pmd.tree.PMDViolationNode;
+import net.sourceforge.pmd.renderers.HTMLRenderer;
+import net.sourceforge.pmd.renderers.JsonRenderer;
+import net.sourceforge.pmd.renderers.Renderer;
+import net.sourceforge.pmd.renderers.XMLRenderer;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+
+import javax.swing.tree.TreeNode;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exports the results shown in the result tree to a file in HTML, JSON or XML format, using the PMD renderers.
+ * The findings are taken from the tree nodes, so the export matches the results of the project shown. The report
+ * is streamed to the file one source file at a time, it is not built as a whole in memory.
+ */
+public final class PMDResultExporter {
+
+    /**
+     * The supported export file extensions, the first is the default.
+     */
+    public static final String[] EXTENSIONS = {"html", "json", "xml"};
+
+    private final Map<String, FileFindings> fileToFindings;
+
+    private PMDResultExporter(Map<String, FileFindings> fileToFindings) {
+        this.fileToFindings = fileToFindings;
+    }
+
+    /**
+     * Collects the findings of the result tree to export. Must be called on the event dispatch thread, the tree
+     * may change while an analysis runs.
+     *
+     * @param rootNode the root node of the result tree
+     * @return the exporter of the collected findings
+     */
+    public static PMDResultExporter fromTree(PMDRootNode rootNode) {
+        Map<String, FileFindings> fileToFindings = new LinkedHashMap<>();
+        Enumeration<TreeNode> nodes = rootNode.preorderEnumeration();
+        while (nodes.hasMoreElements()) {
+            TreeNode node = nodes.nextElement();
+            if (node instanceof PMDViolationNode violationNode) {
+                PMDViolation violation = violationNode.getPmdViolation();
+                findingsOf(fileToFindings, violation.getFilePath()).violations.add(violation.getRuleViolation());
+            } else if (node instanceof PMDSuppressedNode suppressedNode) {
+                PMDSuppressedViolation suppressed = suppressedNode.getPmdSuppressedViolation();
+                findingsOf(fileToFindings, suppressed.getFilePath()).suppressedViolations.add(suppressed.getSuppressedViolation());
+            } else if (node instanceof PMDErrorNode errorNode) {
+                PMDProcessingError error = errorNode.getPmdProcessingError();
+                findingsOf(fileToFindings, error.getFilePath()).processingErrors.add(error.getProcessingError());
+            }
+        }
+        return new PMDResultExporter(fileToFindings);
+    }
+
+    private static FileFindings findingsOf(Map<String, FileFindings> fileToFindings, String filePath) {
+        return fileToFindings.computeIfAbsent(filePath, f -> new FileFindings());
+    }
+
+    /**
+     * Writes the collected findings to the file, in the format of its extension: HTML, JSON or XML. HTML is used
+     * for other extensions.
+     *
+     * @param file the file to write to
+     * @throws IOException when the file cannot be written
+     */
+    public void exportTo(Path file) throws IOException {
+        Renderer renderer = createRenderer(file);
+        renderer.setShowSuppressedViolations(true);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            renderer.setWriter(writer);
+            renderer.start();
+            for (FileFindings findings : fileToFindings.values()) {
+                renderer.renderFileReport(Report.buildReport(listener -> {
+                    findings.violations.forEach(listener::onRuleViolation);
+                    findings.suppressedViolations.forEach(listener::onSuppressedRuleViolation);
+                    findings.processingErrors.forEach(listener::onError);
+                }));
+            }
+            renderer.end();
+            renderer.flush();
+        }
+    }
+
+    private static Renderer createRenderer(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase();
+        if (fileName.endsWith(".json")) {
+            return new JsonRenderer();
+        }
+        if (fileName.endsWith(".xml")) {
+            return new XMLRenderer();
+        }
+        return new HTMLRenderer();
+    }
+
+    /**
+     * The findings of one source file.
+     */
+    private static final class FileFindings {
+        private final List<RuleViolation> violations = new ArrayList<>();
+        private final List<Report.SuppressedViolation> suppressedViolations = new ArrayList<>();
+        private final List<Report.ProcessingError> processingErrors = new ArrayList<>();
+    }
+}
@@ -0,0 +1,207 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.plugins.bodhi.pmd.PMDResultPanel;
+import com.intellij.plugins.bodhi.pmd.PMDUtil;
+import com.intellij.plugins.bodhi.pmd.tree.PMDRootNode;
+import com.intellij.plugins.bodhi.pmd.tree.PMDRuleNode;
+import com.intellij.plugins.bodhi.pmd.tree.PMDRuleSetEntryNode;
+import com.intellij.plugins.bodhi.pmd.tree.PMDRuleSetNode;
+import com.intellij.util.concurrency.AppExecutorUtil;
+
+import javax.swing.tree.TreeNode;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes the results of a running analysis to the result tree as files finish, so violations can be navigated
+ * while the analysis continues. File results are queued by the analysis threads and added to the tree in batches on
+ * the event dispatch thread, at most once per {@link #FLUSH_DELAY_MS} ms. The tree is only notified of the inserted
+ * and changed nodes, so expanded and selected nodes stay as they are.
+ */
+class PMDResultTreePublisher {
+
+    /**
+     * delay to coalesce the file results into one tree update
+     */
+    private static final int FLUSH_DELAY_MS = 300;
+
+    private final PMDResultPanel resultPanel;
+    private final PMDRootNode rootNode;
+    private final PMDResultAsTreeRenderer treeRenderer;
+    private final Map<String, List<PMDRuleSetEntryNode>> ruleSetPathToResults;
+    private final Map<String, PMDRuleSetNode> ruleSetPathToNode = new HashMap<>(); // only used on the EDT
+    private final Queue<PMDFileResult> pendingResults = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * Creates a publisher to the tree of the result panel.
+     *
+     * @param resultPanel the result panel to show the results in
+     * @param treeRenderer the renderer to create the nodes with, only used on the EDT until {@link #finish()}
+     * @param ruleSetPathToResults the result nodes per rule set path, filled by the renderer
+     */
+    PMDResultTreePublisher(PMDResultPanel resultPanel, PMDResultAsTreeRenderer treeRenderer, Map<String, List<PMDRuleSetEntryNode>> ruleSetPathToResults) {
+        this.resultPanel = resultPanel;
+        this.rootNode = resultPanel.getRootNode();
+        this.treeRenderer = treeRenderer;
+        this.ruleSetPathToResults = ruleSetPathToResults;
+    }
+
+    /**
+     * Queues the result of a file to be added to the tree. Can be called from any thread.
+     *
+     * @param result the result of a file
+     */
+    void publish(PMDFileResult result) {
+        pendingResults.add(result);
+        if (flushScheduled.compareAndSet(false, true)) {
+            AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                    () -> ApplicationManager.getApplication().invokeLater(this::flush, ModalityState.any()),
+                    FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Adds the remaining queued results to the tree, followed by the suppressed violations, useless suppressions
+     * and processing errors, which need the results of all files. Call when the analysis is done.
+     */
+    void finish() {
+        Application application = ApplicationManager.getApplication();
+        application.invokeAndWait(this::flush, ModalityState.any());
+        treeRenderer.end();
+        application.invokeAndWait(this::addFinalNodes, ModalityState.any());
+    }
+
+    /**
+     * Renders the queued results and adds the new rule and violation nodes to the tree.
+     */
+    private void flush() {
+        flushScheduled.set(false);
+        if (pendingResults.isEmpty()) {
+            return;
+        }
+        // child counts of the shown rule nodes, to notify the tree of the inserted violations only
+        Map<PMDRuleNode, Integer> ruleNodeToChildCount = new HashMap<>();
+        for (PMDRuleSetNode ruleSetNode : ruleSetPathToNode.values()) {
+            for (int i = 0; i < ruleSetNode.getChildCount(); i++) {
+                if (ruleSetNode.getChildAt(i) instanceof PMDRuleNode ruleNode) {
+                    ruleNodeToChildCount.put(ruleNode, ruleNode.getChildCount());
+                }
+            }
+        }
+        PMDFileResult result;
+        while ((result = pendingResults.poll()) != null) {
+            treeRenderer.renderFileResult(result);
+        }
+        for (String ruleSetPath : ruleSetPathToResults.keySet()) {
+            List<PMDRuleNode> ruleNodes = treeRenderer.getRuleNodes(ruleSetPath);
+            if (ruleNodes.isEmpty()) {
+                continue;
+            }
+            PMDRuleSetNode ruleSetNode = getOrAddRuleSetNode(ruleSetPath);
+            for (int i = 0; i < ruleNodes.size(); i++) {
+                PMDRuleNode ruleNode = ruleNodes.get(i);
+                Integer childCount = ruleNodeToChildCount.get(ruleNode);
+                if (childCount == null) {
+                    // the rule nodes are ordered, all rule nodes before this one are shown already
+                    ruleSetNode.insert(ruleNode, i);
+                    nodesWereInserted(ruleSetNode, new int[]{i});
+                } else if (childCount < ruleNode.getChildCount()) {
+                    nodesWereInserted(ruleNode, indicesFrom(childCount, ruleNode.getChildCount()));
+                }
+            }
+        }
+        updateCounts();
+    }
+
+    /**
+     * Adds the suppressed violations, useless suppressions and processing errors nodes to the tree.
+     */
+    private void addFinalNodes() {
+        for (Map.Entry<String, List<PMDRuleSetEntryNode>> entry : ruleSetPathToResults.entrySet()) {
+            List<PMDRuleSetEntryNode> resultNodes = entry.getValue();
+            // sort rules by priority, rule and suppressed nodes are comparable
+            resultNodes.sort(null);
+            for (PMDRuleSetEntryNode resultNode : resultNodes) {
+                if (resultNode.getParent() == null) {
+                    PMDRuleSetNode ruleSetNode = getOrAddRuleSetNode(entry.getKey());
+                    ruleSetNode.add(resultNode);
+                    nodesWereInserted(ruleSetNode, new int[]{ruleSetNode.getChildCount() - 1});
+                }
+            }
+        }
+        if (isShown()) {
+            resultPanel.addProcessingErrorsNodeToRootIfHasAny(); // as last node
+        }
+        updateCounts();
+    }
+
+    /**
+     * Returns the node of the rule set, and adds it to the root node when not there yet, in rule set order.
+     */
+    private PMDRuleSetNode getOrAddRuleSetNode(String ruleSetPath) {
+        PMDRuleSetNode ruleSetNode = ruleSetPathToNode.get(ruleSetPath);
+        if (ruleSetNode == null) {
+            int index = 0;
+            for (String path : ruleSetPathToResults.keySet()) {
+                if (path.equals(ruleSetPath)) {
+                    break;
+                }
+                if (ruleSetPathToNode.containsKey(path)) {
+                    index++;
+                }
+            }
+            ruleSetNode = new PMDRuleSetNode(PMDUtil.getBareFileNameFromPath(ruleSetPath));
+            ruleSetNode.setToolTip(PMDResultCollector.getRuleSetDescription(ruleSetPath));
+            rootNode.insert(ruleSetNode, index);
+            ruleSetPathToNode.put(ruleSetPath, ruleSetNode);
+            nodesWereInserted(rootNode, new int[]{index});
+        }
+        return ruleSetNode;
+    }
+
+    /**
+     * Recalculates the counts shown in the rule set and rule nodes and the root node.
+     */
+    private void updateCounts() {
+        rootNode.calculateCounts();
+        if (isShown()) {
+            resultPanel.nodeChanged(rootNode);
+            for (PMDRuleSetNode ruleSetNode : ruleSetPathToNode.values()) {
+                resultPanel.nodeChanged(ruleSetNode);
+                for (int i = 0; i < ruleSetNode.getChildCount(); i++) {
+                    resultPanel.nodeChanged(ruleSetNode.getChildAt(i));
+                }
+            }
+        }
+    }
+
+    private void nodesWereInserted(TreeNode parent, int[] childIndices) {
+        if (isShown()) {
+            resultPanel.nodesWereInserted(parent, childIndices);
+        }
+    }
+
+    /**
+     * Returns whether the tree still shows the results of this analysis, it may have been closed or re-run.
+     */
+    private boolean isShown() {
+        return resultPanel.getRootNode() == rootNode;
+    }
+
+    private static int[] indicesFrom(int from, int to) {
+        int[] indices = new int[to - from];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = from + i;
+        }
+        return indices;
+    }
+}
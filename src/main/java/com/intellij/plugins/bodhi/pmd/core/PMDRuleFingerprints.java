@@ -0,0 +1,28 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import net.sourceforge.pmd.lang.rule.Rule;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Computes the fingerprints of rules, see {@link PMDResultCollector#getRuleFingerprint}, once per rule instance.
+ * Rules with the same name may differ, so results are routed by fingerprint. PMD runs copies of the rules, so an
+ * instance is kept for the duration of one analysis run only, to look up the fingerprints of the rules of its
+ * violations. Thread-safe.
+ */
+final class PMDRuleFingerprints {
+
+    private final Map<Rule, String> ruleToFingerprint = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Returns the fingerprint of the rule.
+     *
+     * @param rule the rule
+     * @return the fingerprint of the rule
+     */
+    String of(Rule rule) {
+        return ruleToFingerprint.computeIfAbsent(rule, PMDResultCollector::getRuleFingerprint);
+    }
+}
@@ -0,0 +1,283 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Thread-safe cache of loaded rule sets by path. A rule set is loaded once per path, also when requested
+ * concurrently: later requests wait for the load in progress. Failed loads are not cached, so they are retried on
+ * next request. Entries of local rule set files are invalidated by {@link PMDRuleSetFileListener} when the file
+ * changes, so an edited rule set is reloaded, and the file is no longer watched until it is loaded again. A rule set
+ * which is invalidated while loading is loaded again, as it may be the content from before the change.
+ * The scope of a rule set is kept in the same entry, so it is dropped together with the rule set. The watches are
+ * removed when the plugin is unloaded.
+ */
+final class PMDRuleSetCache {
+
+    private static final Logger LOG = Logger.getInstance(PMDRuleSetCache.class);
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+
+    /**
+     * Loads a rule set from a path.
+     */
+    @FunctionalInterface
+    interface Loader {
+        RuleSet load(String path) throws PMDResultCollector.InvalidRuleSetException;
+    }
+
+    private static final ConcurrentMap<String, CompletableFuture<Entry>> pathToRuleSet = new ConcurrentHashMap<>();
+    private static final Map<String, LocalFileSystem.WatchRequest> watchedPathToRequest = new HashMap<>(); // guarded by itself, the request may be null
+    private static final List<Runnable> invalidationListeners = new CopyOnWriteArrayList<>();
+    private static final Object lock = new Object();
+    private static long generation; // guarded by lock, incremented on each invalidation
+
+    private PMDRuleSetCache() {
+    }
+
+    /**
+     * Returns the rule set at the path, loading it with the loader when not cached yet.
+     *
+     * @param path the path of the rule set
+     * @param loader the loader to load the rule set
+     * @return the rule set
+     * @throws PMDResultCollector.InvalidRuleSetException when the rule set cannot be loaded
+     */
+    static RuleSet get(String path, Loader loader) throws PMDResultCollector.InvalidRuleSetException {
+        return getEntry(path, loader).ruleSet();
+    }
+
+    /**
+     * Returns the scope of the rule set at the path, loading the rule set with the loader when not cached yet.
+     *
+     * @param path the path of the rule set
+     * @param loader the loader to load the rule set
+     * @return the scope of the rule set
+     * @throws PMDResultCollector.InvalidRuleSetException when the rule set cannot be loaded
+     */
+    static PMDRuleSetScope getScope(String path, Loader loader) throws PMDResultCollector.InvalidRuleSetException {
+        return getEntry(path, loader).scope();
+    }
+
+    private static Entry getEntry(String path, Loader loader) throws PMDResultCollector.InvalidRuleSetException {
+        CompletableFuture<Entry> future = pathToRuleSet.get(path);
+        if (future == null) {
+            CompletableFuture<Entry> newFuture = new CompletableFuture<>();
+            future = pathToRuleSet.putIfAbsent(path, newFuture);
+            if (future == null) {
+                // this thread loads, others wait for it
+                future = newFuture;
+                try {
+                    load(path, loader, newFuture);
+                } catch (PMDResultCollector.InvalidRuleSetException | RuntimeException e) {
+                    pathToRuleSet.remove(path, newFuture);
+                    newFuture.completeExceptionally(e);
+                }
+            }
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof PMDResultCollector.InvalidRuleSetException invalid) {
+                throw invalid;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Loads the rule set and completes the future with it. When the cache is invalidated while loading, the file may
+     * have been read before the change, so it is loaded again, up to {@link #MAX_LOAD_ATTEMPTS} times. The last load
+     * is then handed to the waiting requests without caching it.
+     */
+    private static void load(String path, Loader loader, CompletableFuture<Entry> future)
+            throws PMDResultCollector.InvalidRuleSetException {
+        for (int attempt = 1; ; attempt++) {
+            long loadGeneration = startLoad(path);
+            Entry entry = new Entry(loader.load(path));
+            synchronized (lock) {
+                if (loadGeneration == generation) {
+                    // the invalidation removed the future of a reload, cache it again unless another load started
+                    pathToRuleSet.putIfAbsent(path, future);
+                    future.complete(entry);
+                    return;
+                }
+                if (attempt == MAX_LOAD_ATTEMPTS) {
+                    pathToRuleSet.remove(path, future);
+                    future.complete(entry);
+                    return;
+                }
+            }
+            LOG.debug("Reloading rule set " + path + ", invalidated while loading");
+        }
+    }
+
+    /**
+     * Prepares loading the rule set at the path: watches a local rule set file, so a change during or after the load
+     * invalidates it, and returns the current generation of the cache, which changes on each invalidation. Call it
+     * before loading a rule set to {@link #put}.
+     *
+     * @param path the path of the rule set to load
+     * @return the current generation
+     */
+    static long startLoad(String path) {
+        watchIfLocalFile(path);
+        synchronized (lock) {
+            return generation;
+        }
+    }
+
+    /**
+     * Stores the given loaded rule set, replacing any cached one, unless the cache was invalidated since the load
+     * started.
+     *
+     * @param path the path of the rule set
+     * @param ruleSet the loaded rule set
+     * @param loadGeneration the generation of the cache before the rule set was loaded, see {@link #startLoad}
+     */
+    static void put(String path, RuleSet ruleSet, long loadGeneration) {
+        Entry entry = new Entry(ruleSet);
+        synchronized (lock) {
+            if (loadGeneration == generation) {
+                pathToRuleSet.put(path, CompletableFuture.completedFuture(entry));
+            }
+        }
+    }
+
+    /**
+     * Removes the rule set at the given file path, if cached. Paths are compared system independent.
+     *
+     * @param filePath the path of the changed file
+     */
+    static void invalidate(String filePath) {
+        String changedPath = FileUtil.toSystemIndependentName(filePath);
+        boolean invalidated = false;
+        synchronized (lock) {
+            generation++;
+            for (String path : pathToRuleSet.keySet()) {
+                if (toWatchedPath(path).equals(changedPath)) {
+                    pathToRuleSet.remove(path);
+                    LOG.debug("Invalidated cached rule set " + path);
+                    invalidated = true;
+                }
+            }
+        }
+        unwatch(changedPath);
+        if (invalidated) {
+            invalidationListeners.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Removes all cached rule sets and the watches of their files.
+     */
+    static void clear() {
+        synchronized (lock) {
+            generation++;
+            pathToRuleSet.clear();
+        }
+        List<LocalFileSystem.WatchRequest> requests;
+        synchronized (watchedPathToRequest) {
+            requests = new ArrayList<>(watchedPathToRequest.values());
+            watchedPathToRequest.clear();
+        }
+        requests.removeIf(Objects::isNull);
+        if (!requests.isEmpty()) {
+            LocalFileSystem.getInstance().removeWatchedRoots(requests);
+        }
+    }
+
+    /**
+     * Adds a listener which is run when a cached rule set is invalidated, to drop state derived from its rules.
+     *
+     * @param listener the listener
+     */
+    static void addInvalidationListener(Runnable listener) {
+        invalidationListeners.add(listener);
+    }
+
+    /**
+     * Returns whether the given file path is the path of a local rule set file which may be cached.
+     *
+     * @param filePath the path of the file
+     * @return whether it is a watched rule set path
+     */
+    static boolean isWatched(String filePath) {
+        synchronized (watchedPathToRequest) {
+            return watchedPathToRequest.containsKey(FileUtil.toSystemIndependentName(filePath));
+        }
+    }
+
+    /**
+     * Makes sure a local rule set file is known to the virtual file system, so changes to it result in events.
+     */
+    private static void watchIfLocalFile(String path) {
+        File file = new File(path);
+        if (!file.isFile() || ApplicationManager.getApplication() == null) {
+            return; // resource on the classpath or URL
+        }
+        // created once, to remove the watches on unload
+        ApplicationManager.getApplication().getService(Disposal.class);
+        String watchedPath = toWatchedPath(path);
+        synchronized (watchedPathToRequest) {
+            if (watchedPathToRequest.containsKey(watchedPath)) {
+                return;
+            }
+            watchedPathToRequest.put(watchedPath, LocalFileSystem.getInstance().addRootToWatch(watchedPath, false));
+        }
+        LocalFileSystem.getInstance().findFileByPath(watchedPath);
+    }
+
+    private static void unwatch(String watchedPath) {
+        LocalFileSystem.WatchRequest request;
+        synchronized (watchedPathToRequest) {
+            if (!watchedPathToRequest.containsKey(watchedPath)) {
+                return;
+            }
+            request = watchedPathToRequest.remove(watchedPath);
+        }
+        if (request != null && ApplicationManager.getApplication() != null) {
+            LocalFileSystem.getInstance().removeWatchedRoot(request);
+        }
+    }
+
+    private static String toWatchedPath(String path) {
+        return FileUtil.toSystemIndependentName(new File(path).getAbsolutePath());
+    }
+
+    /**
+     * A loaded rule set with its scope.
+     */
+    private record Entry(RuleSet ruleSet, PMDRuleSetScope scope) {
+        Entry(RuleSet ruleSet) {
+            this(ruleSet, new PMDRuleSetScope(ruleSet));
+        }
+    }
+
+    /**
+     * Removes the cached rule sets and the watches of their files when the plugin is unloaded.
+     */
+    @Service(Service.Level.APP)
+    static final class Disposal implements Disposable {
+        @Override
+        public void dispose() {
+            clear();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Invalidates cached rule sets when their local rule set file is changed, moved, renamed or deleted, so the next
+ * run uses the edited rule set without an IDE restart.
+ */
+public class PMDRuleSetFileListener implements BulkFileListener {
+
+    @Override
+    public void after(@NotNull List<? extends VFileEvent> events) {
+        for (VFileEvent event : events) {
+            invalidateIfRuleSet(event.getPath());
+            if (event instanceof VFileMoveEvent moveEvent) {
+                invalidateIfRuleSet(moveEvent.getOldPath());
+            } else if (event instanceof VFilePropertyChangeEvent propertyEvent && propertyEvent.isRename()) {
+                invalidateIfRuleSet(propertyEvent.getOldPath());
+            }
+        }
+    }
+
+    private static void invalidateIfRuleSet(String path) {
+        if (PMDRuleSetCache.isWatched(path)) {
+            PMDRuleSetCache.invalidate(path);
+        }
+    }
+}
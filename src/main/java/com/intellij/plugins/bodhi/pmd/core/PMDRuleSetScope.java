@@ -0,0 +1,73 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import net.sourceforge.pmd.lang.LanguageVersion;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The scope of a loaded rule set: the rules of it which apply to a language version, and its file include and
+ * exclude patterns. It is used to skip the files to which no rule applies before their content is read, the way PMD
+ * selects the rules for a file. A scope is created per rule set instance, so a reloaded rule set gets a new scope:
+ * the scope of a cached rule set is kept in {@link PMDRuleSetCache}, others are created per analysis run.
+ */
+final class PMDRuleSetScope {
+
+    private final RuleSet ruleSet;
+    private final boolean hasFilePatterns;
+    private final Map<LanguageVersion, List<Rule>> versionToRules = new ConcurrentHashMap<>();
+
+    PMDRuleSetScope(RuleSet ruleSet) {
+        this.ruleSet = ruleSet;
+        this.hasFilePatterns = !ruleSet.getFileExclusions().isEmpty() || !ruleSet.getFileInclusions().isEmpty();
+    }
+
+    /**
+     * Returns the rules of the rule set which apply to the language version: the rules of its language, of which
+     * the min and max language version include it.
+     *
+     * @param languageVersion the language version of a file
+     * @return the applicable rules, empty when none apply
+     */
+    List<Rule> getRules(LanguageVersion languageVersion) {
+        return versionToRules.computeIfAbsent(languageVersion, version -> {
+            List<Rule> rules = new ArrayList<>();
+            for (Rule rule : ruleSet.getRules()) {
+                if (appliesTo(rule, version)) {
+                    rules.add(rule);
+                }
+            }
+            return List.copyOf(rules);
+        });
+    }
+
+    /**
+     * Returns whether the rule set has file include or exclude patterns, so whether the path of a file matters.
+     */
+    boolean hasFilePatterns() {
+        return hasFilePatterns;
+    }
+
+    /**
+     * Returns whether the file include and exclude patterns of the rule set select the file.
+     *
+     * @param fileId the id of the file
+     * @return whether the rules of the rule set run on the file
+     */
+    boolean appliesTo(FileId fileId) {
+        return !hasFilePatterns || ruleSet.applies(fileId);
+    }
+
+    private static boolean appliesTo(Rule rule, LanguageVersion languageVersion) {
+        LanguageVersion min = rule.getMinimumLanguageVersion();
+        LanguageVersion max = rule.getMaximumLanguageVersion();
+        return rule.getLanguage().equals(languageVersion.getLanguage())
+                && (min == null || min.compareTo(languageVersion) <= 0)
+                && (max == null || max.compareTo(languageVersion) >= 0);
+    }
+}
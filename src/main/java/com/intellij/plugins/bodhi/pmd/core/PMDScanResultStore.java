@@ -0,0 +1,387 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.io.IOUtil;
+import net.sourceforge.pmd.lang.LanguageVersion;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the results per file and rule of the last project scans, keyed by the content of the file, so a re-run only
+ * analyzes the files with content which was not analyzed before, and only with the rules which were not run on that
+ * content before, like a rule added to a rule set. Their fresh results are merged with the kept results. As the
+ * results are keyed by content, not by file, they survive changes which are reverted later, like switching git
+ * branches back and forth, and apply to copies and moves of a file.
+ * <p>
+ * A result key consists of the analysis configuration of the file, see {@link #createConfigurationKey}, and the hash
+ * of its content. The results of a key are kept per rule fingerprint, see {@link PMDResultCollector#getRuleFingerprint},
+ * without file and rule, see {@link PMDKeptResult}. The least recently used results are evicted when their estimated
+ * total size exceeds the budget. The results are saved under the IDE system directory after each scan and when the
+ * project closes, and loaded on first use, so they survive IDE restarts.
+ * <p>
+ * The content hashes of files are kept by modification stamp, so only changed files are read to hash them. The
+ * content read to hash a file is handed to the analysis, so the file is not read again.
+ * <p>
+ * It also tracks the files of the project which changed since they were last scanned, from the VFS events: files of
+ * which the content changed, or which were created or copied, and the files in created directories. The content
+ * hash of a changed file is dropped right away, the hashes and changes of deleted files are forgotten, and a moved
+ * or renamed file keeps both, as its content did not change.
+ */
+@Service(Service.Level.PROJECT)
+public final class PMDScanResultStore implements Disposable {
+
+    private static final Logger LOG = Logger.getInstance(PMDScanResultStore.class);
+
+    /**
+     * max estimated total size in bytes of the kept results
+     */
+    static final long MAX_TOTAL_SIZE_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * version of the format of the saved results, a saved file of another version is ignored
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private final Map<String, Map<String, PMDKeptResult>> keyToRuleResults = new LinkedHashMap<>(256, 0.75f, true); // guarded by this, in access order
+    private long totalSize; // guarded by this
+    private boolean loaded; // guarded by this
+    private boolean modified; // guarded by this, since the last save
+    private final Map<VirtualFile, ContentHash> fileToContentHash = new ConcurrentHashMap<>();
+    private final Set<VirtualFile> changedSinceScan = ConcurrentHashMap.newKeySet();
+    private final Set<VirtualFile> createdDirectories = ConcurrentHashMap.newKeySet(); // since the last finished scan
+    private final Path storeFile;
+
+    public PMDScanResultStore(Project project) {
+        storeFile = PathManager.getSystemDir().resolve("pmd").resolve("results").resolve(project.getLocationHash() + ".bin");
+        ProjectFileIndex fileIndex = ProjectFileIndex.getInstance(project);
+        project.getMessageBus().connect(this).subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                for (VFileEvent event : events) {
+                    if (event instanceof VFileDeleteEvent deleteEvent) {
+                        forget(deleteEvent.getFile());
+                    } else if (event instanceof VFileContentChangeEvent changeEvent) {
+                        fileToContentHash.remove(changeEvent.getFile());
+                        trackChanged(fileIndex, changeEvent.getFile());
+                    } else if (event instanceof VFileCreateEvent) {
+                        trackChanged(fileIndex, event.getFile());
+                    } else if (event instanceof VFileCopyEvent copyEvent) {
+                        trackChanged(fileIndex, copyEvent.findCreatedFile());
+                    }
+                }
+            }
+        });
+    }
+
+    private void trackChanged(ProjectFileIndex fileIndex, @Nullable VirtualFile file) {
+        if (file == null || !file.isValid() || !fileIndex.isInContent(file)) {
+            return;
+        }
+        if (file.isDirectory()) {
+            // the files of a created directory get no events of their own
+            createdDirectories.add(file);
+        } else {
+            changedSinceScan.add(file);
+        }
+    }
+
+    private void forget(VirtualFile deleted) {
+        if (!deleted.isDirectory()) {
+            fileToContentHash.remove(deleted);
+            changedSinceScan.remove(deleted);
+            return;
+        }
+        String dirPrefix = deleted.getPath() + "/";
+        fileToContentHash.keySet().removeIf(file -> file.getPath().startsWith(dirPrefix));
+        changedSinceScan.removeIf(file -> file.getPath().startsWith(dirPrefix));
+        createdDirectories.removeIf(dir -> dir.equals(deleted) || dir.getPath().startsWith(dirPrefix));
+    }
+
+    public static PMDScanResultStore getInstance(Project project) {
+        return project.getService(PMDScanResultStore.class);
+    }
+
+    /**
+     * Creates the key identifying the analysis configuration of a file, apart from the rules, to create its result
+     * keys with.
+     *
+     * @param languageVersion the language version of the file
+     * @param auxClasspathFingerprint identifies the aux classpath used for type resolution
+     * @return the compact configuration key
+     */
+    public static String createConfigurationKey(LanguageVersion languageVersion, String auxClasspathFingerprint) {
+        return DigestUtils.sha1Hex(languageVersion.getTerseName() + "|" + auxClasspathFingerprint);
+    }
+
+    /**
+     * Returns the key of the results of content.
+     *
+     * @param configurationKey the analysis configuration of the file, see {@link #createConfigurationKey}
+     * @param contentHash the hash of the content, see {@link #hashContent}
+     * @return the result key
+     */
+    public static String getResultKey(String configurationKey, String contentHash) {
+        return configurationKey + "|" + contentHash;
+    }
+
+    /**
+     * Returns the hash of the saved content of the file, or null when the file cannot be read. Reads the file only
+     * when it changed since its content hash was last computed, the read content is returned with the hash.
+     *
+     * @param file the file to analyze
+     * @return the hashed content, or null
+     */
+    public @Nullable HashedContent hashContent(VirtualFile file) {
+        long modificationStamp = file.getModificationStamp();
+        ContentHash contentHash = fileToContentHash.get(file);
+        if (contentHash != null && contentHash.modificationStamp() == modificationStamp) {
+            return new HashedContent(contentHash.hash(), null);
+        }
+        try {
+            byte[] content = file.contentsToByteArray();
+            String hash = DigestUtils.sha256Hex(content);
+            fileToContentHash.put(file, new ContentHash(modificationStamp, hash));
+            return new HashedContent(hash, content);
+        } catch (IOException e) {
+            LOG.debug("Failed to read " + file + " to hash its content", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the kept results for the key per rule fingerprint.
+     *
+     * @param resultKey the key of the results, see {@link #getResultKey}
+     * @return the kept results per rule fingerprint, empty when there are none
+     */
+    public synchronized Map<String, PMDKeptResult> get(String resultKey) {
+        ensureLoaded();
+        return keyToRuleResults.getOrDefault(resultKey, Map.of());
+    }
+
+    /**
+     * Keeps the results of rules for the key, in addition to the kept results of other rules. The results of a
+     * previous version of a rule are dropped: a rule with the same id which is not one of the current rules. Rules
+     * with the same id in the current rules, from different rule sets, are all kept. Evicts the least recently used
+     * results when over budget.
+     *
+     * @param resultKey the key of the results, see {@link #getResultKey}
+     * @param ruleResults the results per rule fingerprint of the analysis of the content of the key
+     * @param currentRuleFingerprints the fingerprints of all rules of the analysis
+     */
+    public synchronized void put(String resultKey, Map<String, PMDFileResult> ruleResults, Set<String> currentRuleFingerprints) {
+        ensureLoaded();
+        Map<String, PMDKeptResult> merged = new HashMap<>();
+        Map<String, PMDKeptResult> previous = keyToRuleResults.get(resultKey);
+        if (previous != null) {
+            totalSize -= estimateSize(resultKey, previous);
+            Set<String> ruleIds = new HashSet<>();
+            for (String ruleFingerprint : ruleResults.keySet()) {
+                ruleIds.add(PMDResultCollector.getRuleIdOfFingerprint(ruleFingerprint));
+            }
+            previous.forEach((ruleFingerprint, result) -> {
+                if (currentRuleFingerprints.contains(ruleFingerprint)
+                        || !ruleIds.contains(PMDResultCollector.getRuleIdOfFingerprint(ruleFingerprint))) {
+                    merged.put(ruleFingerprint, result);
+                }
+            });
+        }
+        ruleResults.forEach((ruleFingerprint, result) -> merged.put(ruleFingerprint, PMDKeptResult.of(result)));
+        keyToRuleResults.put(resultKey, merged);
+        totalSize += estimateSize(resultKey, merged);
+        modified = true;
+        evictOverBudget();
+    }
+
+    private void evictOverBudget() {
+        Iterator<Map.Entry<String, Map<String, PMDKeptResult>>> iterator = keyToRuleResults.entrySet().iterator();
+        while (totalSize > MAX_TOTAL_SIZE_BYTES && iterator.hasNext()) {
+            Map.Entry<String, Map<String, PMDKeptResult>> eldest = iterator.next();
+            totalSize -= estimateSize(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Returns whether the saved content of the file changed since it was last scanned, or the file was created since
+     * then, according to the VFS events since the project was opened.
+     *
+     * @param file the file to check
+     * @return whether the file changed since it was last scanned
+     */
+    public boolean isChangedSinceScan(VirtualFile file) {
+        if (changedSinceScan.contains(file)) {
+            return true;
+        }
+        for (VirtualFile dir : createdDirectories) {
+            if (VfsUtilCore.isAncestor(dir, file, true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks the file as scanned: the scan got its result for its current saved content.
+     *
+     * @param file the scanned file
+     */
+    public void markScanned(VirtualFile file) {
+        changedSinceScan.remove(file);
+    }
+
+    /**
+     * Marks a scan as finished, the files in the directories created before are no longer considered changed.
+     */
+    public void markScanFinished() {
+        createdDirectories.clear();
+    }
+
+    /**
+     * Drops all kept results, also the saved ones.
+     */
+    public synchronized void clear() {
+        keyToRuleResults.clear();
+        totalSize = 0;
+        loaded = true;
+        modified = false;
+        fileToContentHash.clear();
+        changedSinceScan.clear();
+        createdDirectories.clear();
+        try {
+            Files.deleteIfExists(storeFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete the saved PMD results " + storeFile, e);
+        }
+    }
+
+    /**
+     * Saves the kept results when they changed since they were loaded or last saved.
+     */
+    public synchronized void save() {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        Path tempFile = storeFile.resolveSibling(storeFile.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(storeFile.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(keyToRuleResults.size());
+                // least recently used first, so the access order is restored on load
+                for (Map.Entry<String, Map<String, PMDKeptResult>> entry : keyToRuleResults.entrySet()) {
+                    IOUtil.writeUTF(out, entry.getKey());
+                    out.writeInt(entry.getValue().size());
+                    for (Map.Entry<String, PMDKeptResult> ruleResult : entry.getValue().entrySet()) {
+                        IOUtil.writeUTF(out, ruleResult.getKey());
+                        ruleResult.getValue().write(out);
+                    }
+                }
+            }
+            Files.move(tempFile, storeFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Failed to save the PMD results to " + storeFile, e);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.isRegularFile(storeFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storeFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                LOG.debug("Ignoring saved PMD results of another format version");
+                return;
+            }
+            int keyCount = in.readInt();
+            for (int i = 0; i < keyCount; i++) {
+                String resultKey = IOUtil.readUTF(in);
+                int ruleCount = in.readInt();
+                Map<String, PMDKeptResult> ruleResults = new HashMap<>();
+                for (int j = 0; j < ruleCount; j++) {
+                    ruleResults.put(IOUtil.readUTF(in), PMDKeptResult.read(in));
+                }
+                keyToRuleResults.put(resultKey, ruleResults);
+                totalSize += estimateSize(resultKey, ruleResults);
+            }
+            evictOverBudget();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to load the saved PMD results from " + storeFile + ", starting without", e);
+            keyToRuleResults.clear();
+            totalSize = 0;
+        }
+    }
+
+    /**
+     * Estimates the memory size in bytes of the results and their key, the violations dominate.
+     */
+    private static long estimateSize(String resultKey, Map<String, PMDKeptResult> ruleResults) {
+        long size = 64 + 2L * resultKey.length();
+        for (Map.Entry<String, PMDKeptResult> entry : ruleResults.entrySet()) {
+            size += 64 + 2L * entry.getKey().length() + entry.getValue().estimateSize();
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        save();
+        keyToRuleResults.clear();
+        totalSize = 0;
+        fileToContentHash.clear();
+        changedSinceScan.clear();
+        createdDirectories.clear();
+    }
+
+    /**
+     * The hash of the content of a file with the modification stamp of that content.
+     */
+    private record ContentHash(long modificationStamp, String hash) {
+    }
+
+    /**
+     * The hash of the content of a file, with the content when it was read to hash it.
+     *
+     * @param hash the hash of the content
+     * @param content the content read to hash it, or null when the hash of an unchanged file was known
+     */
+    public record HashedContent(String hash, byte @Nullable [] content) {
+    }
+}
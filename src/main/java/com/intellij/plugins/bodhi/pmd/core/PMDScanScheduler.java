@@ -0,0 +1,202 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.ex.IdeDocumentHistory;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.changes.ChangeListManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.ToIntFunction;
+
+/**
+ * Splits the files of a project scan into the batches to analyze, and orders the batches by how much their files
+ * likely matter to the user, so the findings in the files the user works on are shown first. In order of priority:
+ * <ol>
+ *     <li>files open in an editor</li>
+ *     <li>files changed since the last scan, including unsaved changes</li>
+ *     <li>files changed according to version control</li>
+ *     <li>recently edited files</li>
+ *     <li>all other files</li>
+ * </ol>
+ * PMD orders the files of one analysis by path, so the prioritized files are analyzed first in leading batches of
+ * their own, ordered by priority and split by the batch limits, also when all files would fit in one batch. The
+ * leading batches have no incremental analysis cache file: their files are taken from all hash buckets, and their
+ * unchanged files already get their results from the {@link PMDScanResultStore}. A scan without prioritized files,
+ * or with only prioritized files, gets no leading batches.
+ * <p>
+ * PMD only persists the incremental analysis cache entries of the files it analyzed, so each other batch has a cache
+ * file of its own, and a file must end up in the same batch in each scan. A file is assigned to a batch by the hash
+ * of its path, over a number of batches which is a power of two, so it only changes when the project doubles or
+ * halves in size. A batch which exceeds the batch limits is split further, by path.
+ */
+final class PMDScanScheduler {
+
+    private static final int TIER_OPEN = 0;
+    private static final int TIER_CHANGED_SINCE_SCAN = 1;
+    private static final int TIER_VCS_CHANGED = 2;
+    private static final int TIER_RECENT = 3;
+    private static final int TIER_OTHER = 4;
+
+    private PMDScanScheduler() {
+    }
+
+    /**
+     * Splits the files into batches of about the given number of files and total file length, ordered by the
+     * priority of their files.
+     *
+     * @param project the project of the files
+     * @param files the files to analyze
+     * @param maxFiles the max number of files of a batch
+     * @param maxBytes the max total length in bytes of the files of a batch
+     * @return the batches, in the order to analyze them
+     */
+    static List<Batch> createBatches(Project project, List<VirtualFile> files, int maxFiles, long maxBytes) {
+        Set<VirtualFile> openFiles = Set.of(FileEditorManager.getInstance(project).getOpenFiles());
+        Set<VirtualFile> vcsChangedFiles = new HashSet<>(ChangeListManager.getInstance(project).getAffectedFiles());
+        Set<VirtualFile> recentFiles = Set.of(IdeDocumentHistory.getInstance(project).getChangedFiles());
+        FileDocumentManager fileDocumentManager = FileDocumentManager.getInstance();
+        PMDScanResultStore resultStore = PMDScanResultStore.getInstance(project);
+        return planBatches(files, file -> {
+            if (openFiles.contains(file)) {
+                return TIER_OPEN;
+            } else if (fileDocumentManager.isFileModified(file) || resultStore.isChangedSinceScan(file)) {
+                return TIER_CHANGED_SINCE_SCAN;
+            } else if (vcsChangedFiles.contains(file)) {
+                return TIER_VCS_CHANGED;
+            } else if (recentFiles.contains(file)) {
+                return TIER_RECENT;
+            }
+            return TIER_OTHER;
+        }, maxFiles, maxBytes);
+    }
+
+    /**
+     * Splits the files into leading batches of the prioritized files, by tier, lower is more important, followed by
+     * the batches of the other files by the hash of their path.
+     */
+    static List<Batch> planBatches(List<VirtualFile> files, ToIntFunction<VirtualFile> tierOf, int maxFiles, long maxBytes) {
+        List<VirtualFile> prioritized = new ArrayList<>();
+        List<VirtualFile> others = new ArrayList<>();
+        Map<VirtualFile, Integer> fileToTier = new HashMap<>();
+        for (VirtualFile file : files) {
+            int tier = tierOf.applyAsInt(file);
+            if (tier < TIER_OTHER) {
+                prioritized.add(file);
+                fileToTier.put(file, tier);
+            } else {
+                others.add(file);
+            }
+        }
+        if (prioritized.isEmpty() || others.isEmpty()) {
+            return planHashedBatches(files, maxFiles, maxBytes);
+        }
+        prioritized.sort(Comparator.comparing((VirtualFile file) -> fileToTier.get(file)).thenComparing(VirtualFile::getPath));
+        List<Batch> batches = new ArrayList<>();
+        for (List<VirtualFile> part : splitIntoBatches(prioritized, maxFiles, maxBytes)) {
+            batches.add(new Batch(part, null));
+        }
+        batches.addAll(planHashedBatches(others, maxFiles, maxBytes));
+        return batches;
+    }
+
+    /**
+     * Splits the files into batches by the hash of their path.
+     */
+    private static List<Batch> planHashedBatches(List<VirtualFile> files, int maxFiles, long maxBytes) {
+        int bucketCount = getBatchCount(files, maxFiles, maxBytes);
+        if (bucketCount <= 1) {
+            return files.isEmpty() ? List.of() : List.of(new Batch(files, ""));
+        }
+        List<List<VirtualFile>> buckets = new ArrayList<>();
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (VirtualFile file : files) {
+            buckets.get(getBucket(file, bucketCount)).add(file);
+        }
+
+        List<Batch> batches = new ArrayList<>();
+        for (int i = 0; i < bucketCount; i++) {
+            List<VirtualFile> bucket = buckets.get(i);
+            bucket.sort(Comparator.comparing(VirtualFile::getPath));
+            List<List<VirtualFile>> parts = splitIntoBatches(bucket, maxFiles, maxBytes);
+            for (int j = 0; j < parts.size(); j++) {
+                String cacheId = (parts.size() == 1) ? i + "/" + bucketCount : i + "." + j + "/" + bucketCount;
+                batches.add(new Batch(parts.get(j), cacheId));
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Returns the number of batches to split the files into: the least power of two which keeps the average batch
+     * within the limits.
+     */
+    static int getBatchCount(List<VirtualFile> files, int maxFiles, long maxBytes) {
+        long totalBytes = 0;
+        for (VirtualFile file : files) {
+            totalBytes += file.getLength();
+        }
+        long needed = Math.max(ceilDiv(files.size(), Math.max(1, maxFiles)), ceilDiv(totalBytes, Math.max(1, maxBytes)));
+        int count = 1;
+        while (count < needed && count < files.size()) {
+            count <<= 1;
+        }
+        return count;
+    }
+
+    private static int getBucket(VirtualFile file, int bucketCount) {
+        int hash = file.getPath().hashCode();
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % bucketCount;
+    }
+
+    private static long ceilDiv(long dividend, long divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /**
+     * Splits the files into batches of at most the given number of files and total file length, in order.
+     * A file longer than the max length gets a batch of its own.
+     *
+     * @param files the files to split
+     * @param maxFiles the max number of files of a batch
+     * @param maxBytes the max total length in bytes of the files of a batch
+     * @return the batches
+     */
+    static List<List<VirtualFile>> splitIntoBatches(List<VirtualFile> files, int maxFiles, long maxBytes) {
+        List<List<VirtualFile>> batches = new ArrayList<>();
+        List<VirtualFile> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (VirtualFile file : files) {
+            long length = file.getLength();
+            if (!batch.isEmpty() && (batch.size() >= maxFiles || batchBytes + length > maxBytes)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(file);
+            batchBytes += length;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * The files of one analysis, with the id of the batch in its scan, which selects the incremental analysis cache
+     * file of the batch. The id is empty when the scan is not split, and null for a leading batch of prioritized
+     * files, which has no cache file.
+     */
+    record Batch(List<VirtualFile> files, @Nullable String cacheId) {
+    }
+}
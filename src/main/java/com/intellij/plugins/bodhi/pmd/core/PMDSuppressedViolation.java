@@ -60,6 +60,14 @@ public class PMDSuppressedViolation implements HasPositionInFile {
         return suppressedViolation.getUserMessage();
     }
 
+    /**
+     * Returns the wrapped PMD suppressed violation.
+     * @return the wrapped PMD suppressed violation.
+     */
+    Report.SuppressedViolation getSuppressedViolation() {
+        return suppressedViolation;
+    }
+
     @Override
     public String getFilePath() {
         return pmdViolation.getFilePath();
@@ -0,0 +1,32 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Records when the user last changed a document which is open in an editor, so analyses can back off while the
+ * user is typing. Other input, like scrolling or navigating, and changes of documents without editor, like a VCS
+ * update, are not typing.
+ */
+public class PMDTypingListener implements DocumentListener {
+
+    private static volatile long lastTypingMs;
+
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        if (EditorFactory.getInstance().getEditors(event.getDocument()).length > 0) {
+            lastTypingMs = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Returns the time of the last change of a document in an editor.
+     *
+     * @return the time in ms since the epoch, 0 when there was none
+     */
+    static long getLastTypingMs() {
+        return lastTypingMs;
+    }
+}
@@ -55,6 +55,14 @@ public class PMDViolation implements HasPositionInFile, HasRule, HasMessage {
         this.classAndMethodMsg = className + methodName;
     }
 
+    /**
+     * Returns the wrapped PMD rule violation.
+     * @return the wrapped PMD rule violation.
+     */
+    RuleViolation getRuleViolation() {
+        return ruleViolation;
+    }
+
     @Override
     public String getFilePath() {
         return ruleViolation.getFileId().getOriginalPath();
@@ -8,7 +8,6 @@ import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.plugins.bodhi.pmd.tree.PMDRuleNode;
 import com.intellij.plugins.bodhi.pmd.tree.PMDViolationNode;
-import net.sourceforge.pmd.lang.rule.Rule;
 import net.sourceforge.pmd.reporting.Report;
 import net.sourceforge.pmd.reporting.RuleViolation;
 import org.jetbrains.annotations.NotNull;
@@ -16,7 +15,6 @@ import org.jetbrains.annotations.NotNull;
 import javax.swing.tree.TreeNode;
 import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -38,16 +36,20 @@ public class UselessSuppressionsHelper {
     final Map<String, Set<String>> classMethodToRuleNameOfSuppressedViolationsMap = new HashMap<>();
     final Map<String, Set<String>> classMethodToRuleNameOfViolationsMap = new HashMap<>();
     static final RuleKey USING_SUPPRESS_KEY = new RuleKey("UsingSuppressWarnings", 5);
-    private final String ruleSetPath;
 
     /**
-     * the rule names of the rule set, lazily initialized, only when needed
+     * the names of the rules which were run, of all rule sets of the analysis
      */
-    private Set<String> ruleNames;
+    private final Set<String> ruleNames;
     private volatile ViolatingAnnotationHolder annotationContextResult;
 
-    UselessSuppressionsHelper(String ruleSetPath) {
-        this.ruleSetPath = ruleSetPath;
+    /**
+     * Creates a helper for the violations of all rule sets of an analysis, the rules of which were run together.
+     *
+     * @param ruleNames the names of the rules which were run
+     */
+    UselessSuppressionsHelper(Set<String> ruleNames) {
+        this.ruleNames = ruleNames;
     }
 
     void storeRuleNameForMethod(Report.SuppressedViolation suppressed) {
@@ -153,17 +155,6 @@ public class UselessSuppressionsHelper {
     }
 
     boolean ruleSetContains(String ruleName) {
-        if (ruleNames == null) {
-            try {
-                Collection<Rule> rules = PMDResultCollector.getRuleSet(ruleSetPath).getRules();
-                ruleNames = new HashSet<>(rules.size(), 1);
-                for (Rule rule : rules) {
-                    ruleNames.add(rule.getName());
-                }
-            } catch (PMDResultCollector.InvalidRuleSetException e) {
-                throw new RuntimeException(e);
-            }
-        }
         return ruleNames.contains(ruleName); // O(1) access time
     }
 
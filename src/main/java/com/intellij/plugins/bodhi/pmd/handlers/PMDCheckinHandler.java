@@ -2,10 +2,8 @@ package com.intellij.plugins.bodhi.pmd.handlers;
 
 import com.intellij.AbstractBundle;
 import com.intellij.CommonBundle;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
-import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.vcs.CheckinProjectPanel;
 import com.intellij.openapi.vcs.changes.CommitExecutor;
 import com.intellij.openapi.vcs.checkin.CheckinHandler;
@@ -19,8 +17,6 @@ import com.intellij.plugins.bodhi.pmd.PMDResultPanel;
 import com.intellij.plugins.bodhi.pmd.PMDUtil;
 import com.intellij.plugins.bodhi.pmd.core.PMDResultCollector;
 import com.intellij.plugins.bodhi.pmd.tree.*;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiManager;
 import com.intellij.util.PairConsumer;
 import com.intellij.util.ui.UIUtil;
 import org.apache.commons.logging.Log;
@@ -34,6 +30,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
 
 public class PMDCheckinHandler extends CheckinHandler {
@@ -98,39 +95,26 @@ public class PMDCheckinHandler extends CheckinHandler {
             return ReturnResult.COMMIT;
         }
 
-        List<PMDRuleSetNode> ruleSetResultNodes = new ArrayList<>();
-        for (String ruleSetPath : plugin.getCustomRuleSetPaths()) {
-            PMDRuleSetNode ruleSetResultNode = scanFiles(ruleSetPath, plugin);
-            if (ruleSetResultNode != null) {
-                ruleSetResultNodes.add(ruleSetResultNode);
-            }
-        }
+        List<PMDRuleSetNode> ruleSetResultNodes = scanFiles(plugin.getCustomRuleSetPaths(), plugin);
         return processScanResults(ruleSetResultNodes, project);
     }
 
-    private PMDRuleSetNode scanFiles(String ruleSetPath, PMDProjectComponent plugin) {
-        PMDRuleSetNode ruleSetResultNode = null;
+    private List<PMDRuleSetNode> scanFiles(List<String> ruleSetPaths, PMDProjectComponent plugin) {
+        List<PMDRuleSetNode> ruleSetResultNodes = new ArrayList<>();
         PMDResultCollector collector = new PMDResultCollector();
         List<VirtualFile> files = new ArrayList<>(checkinProjectPanel.getVirtualFiles());
 
-        PsiManager psiManager = PsiManager.getInstance(checkinProjectPanel.getProject());
-
-        List<PMDRuleSetEntryNode> ruleSetResultNodes = collector.runPMDAndGetResults(
-                ApplicationManager.getApplication().runReadAction(new Computable<>() {
-                    @Override
-                    public List<PsiFile> compute() {
-                        return files.stream()
-                                .map(psiManager::findFile)
-                                .toList();
-                    }
-                }),
-                ruleSetPath,
+        Map<String, List<PMDRuleSetEntryNode>> ruleSetPathToResultNodes = collector.runPMDAndGetResults(
+                files,
+                ruleSetPaths,
                 plugin,
                 null);
-        if (!ruleSetResultNodes.isEmpty()) {
-            ruleSetResultNode = createRuleSetNodeWithResults(ruleSetPath, ruleSetResultNodes);
+        for (Map.Entry<String, List<PMDRuleSetEntryNode>> entry : ruleSetPathToResultNodes.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                ruleSetResultNodes.add(createRuleSetNodeWithResults(entry.getKey(), entry.getValue()));
+            }
         }
-        return ruleSetResultNode;
+        return ruleSetResultNodes;
     }
 
     private PMDRuleSetNode createRuleSetNodeWithResults(String ruleSetPath, List<PMDRuleSetEntryNode> ruleResultNodes) {
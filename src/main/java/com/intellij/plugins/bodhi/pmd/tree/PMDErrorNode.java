@@ -20,6 +20,10 @@ public class PMDErrorNode extends PMDLeafNode implements HasMessage {
         pmdProcessingError = error;
     }
 
+    public PMDProcessingError getPmdProcessingError() {
+        return pmdProcessingError;
+    }
+
     @Override
     public String getToolTip() {
         return pmdProcessingError.getMsg();
@@ -29,6 +29,7 @@ public class PMDRootNode extends PMDBranchNode {
     private String ruleSetErrorMsg = null;
 
     private volatile boolean running = false;
+    private volatile boolean canceled = false;
 
     /**
      * Creates a root node with given panel.
@@ -66,6 +67,10 @@ public class PMDRootNode extends PMDBranchNode {
         running = r;
     }
 
+    public void setCanceled(boolean c) {
+        canceled = c;
+    }
+
     public void setExportErrorMsg(String exportErrMsg) {
         exportErrorMessage = exportErrMsg;
     }
@@ -80,6 +85,9 @@ public class PMDRootNode extends PMDBranchNode {
         }
         if (running) {
             cellRenderer.append(" Processing...");
+            if (getViolationCount() > 0) {
+                cellRenderer.append(" (" + countInText(getViolationCount(), " violation") + " so far)", GRAYED_ATTRIBUTES);
+            }
             return;
         }
         String result = " (" + countInText(getViolationCount(), " violation");
@@ -107,6 +115,9 @@ public class PMDRootNode extends PMDBranchNode {
                 result += " - WARN: export failed: " + exportErrorMessage;
             }
         }
+        if (canceled) {
+            result += " - canceled, partial results";
+        }
         cellRenderer.append(result + ")", GRAYED_ATTRIBUTES);
 
         if (ruleSetErrorMsg != null) {
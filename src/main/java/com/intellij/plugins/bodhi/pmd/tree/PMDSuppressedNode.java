@@ -26,6 +26,10 @@ public class PMDSuppressedNode extends PMDLeafNode implements HasMessage, HasRul
         pmdSuppressedViolation = pmdSuppressed;
     }
 
+    public PMDSuppressedViolation getPmdSuppressedViolation() {
+        return pmdSuppressedViolation;
+    }
+
     /**
      * Open editor and select/navigate to the correct line and column.
      *
@@ -0,0 +1,51 @@
+package com.intellij.plugins.bodhi.pmd.annotator;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import net.sourceforge.pmd.reporting.Report;
+
+public class PMDAnnotationCacheTest extends BasePlatformTestCase {
+
+    private Document document;
+    private final Report report = Report.buildReport(listener -> {});
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        document = EditorFactory.getInstance().createDocument("class A {}");
+    }
+
+    public void testReportOfSameContentAndConfiguration() {
+        PMDAnnotationCache.put(document, 1, "config", report);
+
+        assertSame(report, PMDAnnotationCache.get(document, 1, "config"));
+    }
+
+    public void testNoReportForChangedDocument() {
+        PMDAnnotationCache.put(document, 1, "config", report);
+
+        assertNull(PMDAnnotationCache.get(document, 2, "config"));
+    }
+
+    public void testNoReportForOtherConfiguration() {
+        PMDAnnotationCache.put(document, 1, "config", report);
+
+        assertNull(PMDAnnotationCache.get(document, 1, "other config"));
+    }
+
+    public void testNoReportForOtherDocument() {
+        PMDAnnotationCache.put(document, 1, "config", report);
+
+        assertNull(PMDAnnotationCache.get(EditorFactory.getInstance().createDocument("class A {}"), 1, "config"));
+    }
+
+    public void testLaterReportReplacesEarlier() {
+        Report later = Report.buildReport(listener -> {});
+        PMDAnnotationCache.put(document, 1, "config", report);
+        PMDAnnotationCache.put(document, 2, "config", later);
+
+        assertNull(PMDAnnotationCache.get(document, 1, "config"));
+        assertSame(later, PMDAnnotationCache.get(document, 2, "config"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.plugins.bodhi.pmd.ConfigOption;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.util.Map;
+
+public class PMDAnalysisThrottleTest extends BasePlatformTestCase {
+
+    @Override
+    protected boolean runInDispatchThread() {
+        // the throttle probes the event dispatch thread, which must not be blocked by the test
+        return false;
+    }
+
+    public void testNoThrottleForFixedProfile() {
+        assertNull(PMDAnalysisThrottle.create(Map.of(ConfigOption.THREAD_PROFILE, PMDAnalysisThrottle.PROFILE_FIXED), 4));
+    }
+
+    public void testNoThrottleForSingleThread() {
+        assertNull(PMDAnalysisThrottle.create(Map.of(ConfigOption.THREAD_PROFILE, PMDAnalysisThrottle.PROFILE_ADAPTIVE), 1));
+    }
+
+    public void testAdaptiveByDefault() {
+        try (PMDAnalysisThrottle throttle = PMDAnalysisThrottle.create(Map.of(), 4)) {
+            assertNotNull(throttle);
+        }
+    }
+
+    public void testAdaptiveLimitsToThreads() {
+        try (PMDAnalysisThrottle throttle = PMDAnalysisThrottle.create(Map.of(ConfigOption.THREAD_PROFILE, PMDAnalysisThrottle.PROFILE_ADAPTIVE), 4)) {
+            assertNotNull(throttle);
+            assertLimit(throttle, 4);
+        }
+    }
+
+    public void testBackgroundLimitsToHalfTheThreads() {
+        try (PMDAnalysisThrottle throttle = PMDAnalysisThrottle.create(Map.of(ConfigOption.THREAD_PROFILE, PMDAnalysisThrottle.PROFILE_BACKGROUND), 4)) {
+            assertNotNull(throttle);
+            assertLimit(throttle, 2);
+        }
+    }
+
+    public void testReleasedPermitCanBeAcquiredAgain() {
+        try (PMDAnalysisThrottle throttle = PMDAnalysisThrottle.create(Map.of(ConfigOption.THREAD_PROFILE, PMDAnalysisThrottle.PROFILE_BACKGROUND), 2)) {
+            assertNotNull(throttle);
+            throttle.acquire(null);
+            throttle.release();
+            throttle.acquire(null);
+        }
+    }
+
+    /**
+     * Asserts that the given number of permits can be acquired and that the next acquire blocks. The limit only
+     * goes down while permits are held, so the next acquire blocks even when the limit is adapted meanwhile.
+     */
+    private static void assertLimit(PMDAnalysisThrottle throttle, int limit) {
+        for (int i = 0; i < limit; i++) {
+            throttle.acquire(null);
+        }
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        indicator.cancel();
+        try {
+            throttle.acquire(indicator);
+            fail("expected the acquire over the limit to block until canceled");
+        } catch (ProcessCanceledException e) {
+            // blocked
+        }
+        for (int i = 0; i < limit; i++) {
+            throttle.release();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import net.sourceforge.pmd.lang.Language;
+import net.sourceforge.pmd.lang.LanguageRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class PMDProjectCacheFileTest extends BasePlatformTestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            PMDProjectCacheFile.clear(getProject());
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testCacheFilePerConfiguration() {
+        String javaCache = PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", "");
+
+        assertEquals(javaCache, PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", ""));
+        assertFalse(javaCache.equals(PMDProjectCacheFile.getOrCreate(getProject(), "kotlin-rules", "")));
+        assertTrue(Path.of(javaCache).startsWith(PMDProjectCacheFile.getCacheDir(getProject())));
+    }
+
+    public void testConfigurationKeyIgnoresLanguageVersionOrder() {
+        Language java = LanguageRegistry.PMD.getLanguageById("java");
+        Language kotlin = LanguageRegistry.PMD.getLanguageById("kotlin");
+
+        assertEquals(
+                PMDProjectCacheFile.createConfigurationKey("rules", List.of(java.getDefaultVersion(), kotlin.getDefaultVersion()), "cp"),
+                PMDProjectCacheFile.createConfigurationKey("rules", List.of(kotlin.getDefaultVersion(), java.getDefaultVersion()), "cp"));
+        assertFalse(PMDProjectCacheFile.createConfigurationKey("rules", List.of(java.getDefaultVersion()), "cp")
+                .equals(PMDProjectCacheFile.createConfigurationKey("rules", List.of(java.getDefaultVersion()), "other cp")));
+    }
+
+    public void testCacheFilePerBatch() {
+        String firstBatch = PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", "0/2");
+
+        assertEquals(firstBatch, PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", "0/2"));
+        assertFalse(firstBatch.equals(PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", "1/2")));
+    }
+
+    public void testEvictsLeastRecentlyUsedConfigurationOverMax() throws IOException {
+        long now = System.currentTimeMillis();
+        Path leastRecent = null;
+        for (int i = 0; i < PMDProjectCacheFile.MAX_CONFIGURATIONS; i++) {
+            Path cacheFile = Path.of(PMDProjectCacheFile.getOrCreate(getProject(), "config " + i, ""));
+            Files.writeString(cacheFile, "cache");
+            Files.setLastModifiedTime(cacheFile, FileTime.fromMillis(now - 1000L * (PMDProjectCacheFile.MAX_CONFIGURATIONS - i)));
+            if (i == 0) {
+                leastRecent = cacheFile;
+            }
+        }
+        assertEquals(PMDProjectCacheFile.MAX_CONFIGURATIONS, countCacheFiles());
+
+        Path inUse = Path.of(PMDProjectCacheFile.getOrCreate(getProject(), "new config", ""));
+        Files.writeString(inUse, "cache");
+        PMDProjectCacheFile.getOrCreate(getProject(), "new config", "");
+
+        assertTrue(Files.exists(inUse));
+        assertFalse(Files.exists(leastRecent));
+        assertEquals(PMDProjectCacheFile.MAX_CONFIGURATIONS, countCacheFiles());
+    }
+
+    public void testKeepsAllBatchesOfConfigurationInUse() throws IOException {
+        int batchCount = PMDProjectCacheFile.MAX_CONFIGURATIONS * 4;
+        List<Path> batchFiles = new ArrayList<>();
+        for (int i = 0; i < batchCount; i++) {
+            Path cacheFile = Path.of(PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", i + "/" + batchCount));
+            Files.writeString(cacheFile, "cache");
+            batchFiles.add(cacheFile);
+        }
+        Path other = Path.of(PMDProjectCacheFile.getOrCreate(getProject(), "kotlin-rules", ""));
+        Files.writeString(other, "cache");
+
+        // a second scan of the same configuration
+        for (int i = 0; i < batchCount; i++) {
+            PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", i + "/" + batchCount);
+        }
+
+        for (Path batchFile : batchFiles) {
+            assertTrue(Files.exists(batchFile));
+        }
+        assertTrue(Files.exists(other));
+    }
+
+    public void testDeletesCacheFilesOfPreviousSplit() throws IOException {
+        Path previousSplit = Path.of(PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", "1/2"));
+        Files.writeString(previousSplit, "cache");
+
+        Path newSplit = Path.of(PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", "1/3"));
+        Files.writeString(newSplit, "cache");
+
+        assertFalse(Files.exists(previousSplit));
+        assertTrue(Files.exists(newSplit));
+    }
+
+    public void testClear() throws IOException {
+        Files.writeString(Path.of(PMDProjectCacheFile.getOrCreate(getProject(), "java-rules", "")), "cache");
+        assertTrue(PMDProjectCacheFile.getTotalSize(getProject()) > 0);
+
+        PMDProjectCacheFile.clear(getProject());
+
+        assertEquals(0, PMDProjectCacheFile.getTotalSize(getProject()));
+    }
+
+    private long countCacheFiles() throws IOException {
+        try (Stream<Path> files = Files.list(PMDProjectCacheFile.getCacheDir(getProject()))) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.lang.rule.RulePriority;
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PMDResultCollectorTest {
+
+    private static final String RULE_NAME = "UnusedLocalVariable";
+
+    private static Rule rule;
+
+    @org.junit.Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadRule() throws Exception {
+        rule = PMDResultCollector.loadRuleSet("category/java/bestpractices.xml").getRuleByName(RULE_NAME);
+    }
+
+    @Test
+    public void fingerprintStartsWithRuleId() {
+        String fingerprint = PMDResultCollector.getRuleFingerprint(rule);
+
+        assertEquals("java:" + RULE_NAME, PMDResultCollector.getRuleId(rule));
+        assertTrue(fingerprint.startsWith("java:" + RULE_NAME + "@"));
+        assertEquals("java:" + RULE_NAME, PMDResultCollector.getRuleIdOfFingerprint(fingerprint));
+    }
+
+    @Test
+    public void fingerprintIsSameForCopy() {
+        assertEquals(PMDResultCollector.getRuleFingerprint(rule), PMDResultCollector.getRuleFingerprint(rule.deepCopy()));
+    }
+
+    @Test
+    public void fingerprintChangesWithDefinition() {
+        Rule otherPriority = rule.deepCopy();
+        otherPriority.setPriority(rule.getPriority() == RulePriority.HIGH ? RulePriority.LOW : RulePriority.HIGH);
+        Rule otherMessage = rule.deepCopy();
+        otherMessage.setMessage("Another message");
+
+        String fingerprint = PMDResultCollector.getRuleFingerprint(rule);
+        assertNotEquals(fingerprint, PMDResultCollector.getRuleFingerprint(otherPriority));
+        assertNotEquals(fingerprint, PMDResultCollector.getRuleFingerprint(otherMessage));
+        assertEquals(PMDResultCollector.getRuleId(rule),
+                PMDResultCollector.getRuleIdOfFingerprint(PMDResultCollector.getRuleFingerprint(otherPriority)));
+    }
+
+    @Test
+    public void fingerprintIgnoresDescription() {
+        Rule otherDescription = rule.deepCopy();
+        otherDescription.setDescription("Another description");
+
+        assertEquals(PMDResultCollector.getRuleFingerprint(rule), PMDResultCollector.getRuleFingerprint(otherDescription));
+    }
+
+    @Test
+    public void ruleFingerprintsAreComputedOncePerRule() {
+        PMDRuleFingerprints fingerprints = new PMDRuleFingerprints();
+
+        String fingerprint = fingerprints.of(rule);
+
+        assertEquals(PMDResultCollector.getRuleFingerprint(rule), fingerprint);
+        assertSame(fingerprint, fingerprints.of(rule));
+    }
+
+    @Test
+    public void combineRuleSetsRunsSameRuleOnce() throws IOException {
+        String first = writeRuleSet("first.xml", "");
+        String second = writeRuleSet("second.xml", "");
+        Map<String, String> ruleFingerprintToRuleSetPath = new HashMap<>();
+
+        List<RuleSet> combined = PMDResultCollector.combineRuleSets(List.of(first, second), ruleFingerprintToRuleSetPath, msg -> {
+            throw new AssertionError(msg);
+        });
+
+        assertEquals(1, combined.size());
+        assertEquals(1, combined.get(0).getRules().size());
+        assertEquals(Map.of(PMDResultCollector.getRuleFingerprint(rule), first), ruleFingerprintToRuleSetPath);
+    }
+
+    @Test
+    public void combineRuleSetsKeepsChangedRuleWithSameName() throws IOException {
+        String first = writeRuleSet("first.xml", "");
+        String second = writeRuleSet("second.xml", "<priority>1</priority>");
+        Map<String, String> ruleFingerprintToRuleSetPath = new HashMap<>();
+
+        List<RuleSet> combined = PMDResultCollector.combineRuleSets(List.of(first, second), ruleFingerprintToRuleSetPath, msg -> {
+            throw new AssertionError(msg);
+        });
+
+        assertEquals(2, combined.size());
+        assertEquals(2, ruleFingerprintToRuleSetPath.size());
+        assertTrue(ruleFingerprintToRuleSetPath.containsValue(first));
+        assertTrue(ruleFingerprintToRuleSetPath.containsValue(second));
+    }
+
+    @Test
+    public void combineRuleSetsReportsInvalidRuleSet() throws IOException {
+        String valid = writeRuleSet("valid.xml", "");
+        File invalid = tempFolder.newFile("invalid.xml");
+        Files.writeString(invalid.toPath(), "<ruleset", StandardCharsets.UTF_8);
+        List<String> errors = new ArrayList<>();
+
+        List<RuleSet> combined = PMDResultCollector.combineRuleSets(List.of(invalid.getPath(), valid), new HashMap<>(), errors::add);
+
+        assertEquals(1, combined.size());
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith("invalid"));
+    }
+
+    private String writeRuleSet(String fileName, String ruleContent) throws IOException {
+        File file = tempFolder.newFile(fileName);
+        Files.writeString(file.toPath(), """
+                <?xml version="1.0"?>
+                <ruleset name="%s"
+                         xmlns="http://pmd.sourceforge.net/ruleset/2.0.0"
+                         xmlns:xsi="http://www.w3.org/2001/XMLSchema-instance"
+                         xsi:schemaLocation="http://pmd.sourceforge.net/ruleset/2.0.0 https://pmd.sourceforge.io/ruleset_2_0_0.xsd">
+                    <description>Test rule set</description>
+                    <rule ref="category/java/bestpractices.xml/%s">%s</rule>
+                </ruleset>
+                """.formatted(fileName, RULE_NAME, ruleContent), StandardCharsets.UTF_8);
+        return file.getPath();
+    }
+}
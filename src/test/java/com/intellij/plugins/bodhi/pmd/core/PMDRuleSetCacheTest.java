@@ -0,0 +1,190 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import net.sourceforge.pmd.lang.rule.RuleSet;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PMDRuleSetCacheTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private String path;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        // a file of its own per test, the cache is static
+        path = tempFolder.newFile("rules.xml").getAbsolutePath();
+    }
+
+    @Test
+    public void loadsOncePerPath() throws Exception {
+        RuleSet first = PMDRuleSetCache.get(path, this::load);
+        RuleSet second = PMDRuleSetCache.get(path, this::load);
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void failedLoadIsRetried() throws Exception {
+        try {
+            PMDRuleSetCache.get(path, p -> {
+                throw new PMDResultCollector.InvalidRuleSetException("broken");
+            });
+            fail("expected the load to fail");
+        } catch (PMDResultCollector.InvalidRuleSetException e) {
+            assertEquals("broken", e.getMessage());
+        }
+
+        PMDRuleSetCache.get(path, this::load);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void invalidateReloadsAndNotifies() throws Exception {
+        AtomicInteger invalidations = new AtomicInteger();
+        String otherPath = tempFolder.newFile("other.xml").getAbsolutePath();
+        PMDRuleSetCache.addInvalidationListener(invalidations::incrementAndGet);
+        RuleSet first = PMDRuleSetCache.get(path, this::load);
+
+        PMDRuleSetCache.invalidate(otherPath);
+        assertSame(first, PMDRuleSetCache.get(path, this::load));
+        assertEquals(0, invalidations.get());
+
+        PMDRuleSetCache.invalidate(path);
+        assertNotSame(first, PMDRuleSetCache.get(path, this::load));
+        assertEquals(2, loads.get());
+        assertEquals(1, invalidations.get());
+    }
+
+    @Test
+    public void scopeIsKeptWithRuleSet() throws Exception {
+        PMDRuleSetScope scope = PMDRuleSetCache.getScope(path, this::load);
+
+        assertSame(scope, PMDRuleSetCache.getScope(path, this::load));
+        PMDRuleSetCache.invalidate(path);
+        assertNotSame(scope, PMDRuleSetCache.getScope(path, this::load));
+    }
+
+    @Test
+    public void loadInvalidatedWhileLoadingIsReloaded() throws Exception {
+        RuleSet reloaded = PMDRuleSetCache.get(path, p -> {
+            RuleSet ruleSet = load(p);
+            if (loads.get() == 1) {
+                PMDRuleSetCache.invalidate(path); // the file changes while it is read
+            }
+            return ruleSet;
+        });
+
+        assertSame(reloaded, PMDRuleSetCache.get(path, this::load));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void loadInvalidatedOnEachAttemptIsNotCached() throws Exception {
+        RuleSet stale = PMDRuleSetCache.get(path, p -> {
+            RuleSet ruleSet = load(p);
+            PMDRuleSetCache.invalidate(path);
+            return ruleSet;
+        });
+        int attempts = loads.get();
+
+        assertNotSame(stale, PMDRuleSetCache.get(path, this::load));
+        assertEquals(attempts + 1, loads.get());
+    }
+
+    @Test
+    public void waitersGetReloadedRuleSet() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch changed = new CountDownLatch(1);
+        PMDRuleSetCache.Loader blockingLoader = p -> {
+            RuleSet ruleSet = load(p);
+            if (loads.get() == 1) {
+                loading.countDown();
+                await(changed);
+            }
+            return ruleSet;
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<RuleSet> loader = executor.submit(() -> PMDRuleSetCache.get(path, blockingLoader));
+            await(loading);
+            AtomicReference<Thread> waiterThread = new AtomicReference<>();
+            Future<RuleSet> waiter = executor.submit(() -> {
+                waiterThread.set(Thread.currentThread());
+                return PMDRuleSetCache.get(path, this::load);
+            });
+            // the waiter blocks on the load in progress
+            while (waiterThread.get() == null || waiterThread.get().getState() != Thread.State.WAITING) {
+                Thread.onSpinWait();
+            }
+            PMDRuleSetCache.invalidate(path);
+            changed.countDown();
+
+            RuleSet reloaded = loader.get(10, TimeUnit.SECONDS);
+            assertSame(reloaded, waiter.get(10, TimeUnit.SECONDS));
+            assertSame(reloaded, PMDRuleSetCache.get(path, this::load));
+            assertEquals(2, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void putIsCached() throws Exception {
+        RuleSet ruleSet = load(path);
+
+        PMDRuleSetCache.put(path, ruleSet, PMDRuleSetCache.startLoad(path));
+
+        assertSame(ruleSet, PMDRuleSetCache.get(path, this::load));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void putLoadedBeforeInvalidationIsNotCached() throws Exception {
+        long generation = PMDRuleSetCache.startLoad(path);
+        RuleSet stale = load(path);
+        PMDRuleSetCache.invalidate(path);
+
+        PMDRuleSetCache.put(path, stale, generation);
+
+        assertNotSame(stale, PMDRuleSetCache.get(path, this::load));
+        assertEquals(2, loads.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private RuleSet load(String path) {
+        loads.incrementAndGet();
+        return RuleSet.create(new File(path).getName(), "", path, List.of(), List.of(), List.of());
+    }
+}
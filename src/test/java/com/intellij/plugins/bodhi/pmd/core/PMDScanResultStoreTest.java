@@ -0,0 +1,219 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import net.sourceforge.pmd.lang.document.FileId;
+import net.sourceforge.pmd.lang.document.FileLocation;
+import net.sourceforge.pmd.lang.document.TextRange2d;
+import net.sourceforge.pmd.lang.rule.Rule;
+import net.sourceforge.pmd.reporting.Report;
+import net.sourceforge.pmd.reporting.RuleViolation;
+import net.sourceforge.pmd.reporting.ViolationSuppressor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class PMDScanResultStoreTest extends BasePlatformTestCase {
+
+    private static final PMDFileResult RESULT = new PMDFileResult(List.of(), List.of(), List.of());
+
+    private PMDScanResultStore store;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        store = PMDScanResultStore.getInstance(getProject());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            store.clear();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testContentHashChangesWithContent() {
+        LightVirtualFile file = new LightVirtualFile("A.java", "class A {}");
+
+        PMDScanResultStore.HashedContent content = store.hashContent(file);
+        assertNotNull(content);
+        assertEquals("class A {}", new String(content.content(), StandardCharsets.UTF_8));
+
+        PMDScanResultStore.HashedContent unchanged = store.hashContent(file);
+        assertEquals(content.hash(), unchanged.hash());
+        assertNull(unchanged.content()); // not read again
+
+        file.setContent(null, "class A { int i; }", false);
+        assertFalse(content.hash().equals(store.hashContent(file).hash()));
+
+        file.setContent(null, "class A {}", false);
+        assertEquals(content.hash(), store.hashContent(file).hash());
+    }
+
+    public void testResultKeyDoesNotDependOnFile() {
+        String hash = store.hashContent(new LightVirtualFile("A.java", "class A {}")).hash();
+
+        assertEquals(hash, store.hashContent(new LightVirtualFile("Copy.java", "class A {}")).hash());
+        assertEquals("config|" + hash, PMDScanResultStore.getResultKey("config", hash));
+    }
+
+    public void testCreatedFileIsChangedSinceScan() {
+        VirtualFile file = myFixture.addFileToProject("A.java", "class A {}").getVirtualFile();
+        assertTrue(store.isChangedSinceScan(file));
+
+        store.markScanned(file);
+
+        assertFalse(store.isChangedSinceScan(file));
+    }
+
+    public void testChangedContentIsChangedSinceScan() throws IOException {
+        VirtualFile file = myFixture.addFileToProject("A.java", "class A {}").getVirtualFile();
+        store.markScanned(file);
+
+        WriteAction.runAndWait(() -> VfsUtil.saveText(file, "class A { int i; }"));
+
+        assertTrue(store.isChangedSinceScan(file));
+    }
+
+    public void testFileInCreatedDirectoryIsChangedUntilScanFinished() throws IOException {
+        VirtualFile sourceRoot = myFixture.addFileToProject("Seed.java", "").getVirtualFile().getParent();
+        VirtualFile dir = WriteAction.computeAndWait(() -> sourceRoot.createChildDirectory(this, "created"));
+        VirtualFile file = WriteAction.computeAndWait(() -> dir.createChildData(this, "A.java"));
+        store.markScanned(file);
+        assertTrue(store.isChangedSinceScan(file));
+
+        store.markScanFinished();
+
+        assertFalse(store.isChangedSinceScan(file));
+    }
+
+    public void testRenamedFileKeepsContentHash() throws IOException {
+        VirtualFile file = myFixture.addFileToProject("A.java", "class A {}").getVirtualFile();
+        store.hashContent(file);
+
+        WriteAction.runAndWait(() -> file.rename(this, "B.java"));
+
+        assertNull(store.hashContent(file).content()); // not read again
+    }
+
+    public void testPutMergesResultsOfOtherRules() {
+        store.put("key", Map.of("java:A@1", RESULT), Set.of("java:A@1"));
+        store.put("key", Map.of("java:B@1", RESULT), Set.of("java:A@1", "java:B@1"));
+
+        assertEquals(Set.of("java:A@1", "java:B@1"), store.get("key").keySet());
+    }
+
+    public void testPutDropsResultsOfPreviousRuleVersion() {
+        store.put("key", Map.of("java:A@1", RESULT, "java:B@1", RESULT), Set.of("java:A@1", "java:B@1"));
+        store.put("key", Map.of("java:A@2", RESULT), Set.of("java:A@2", "java:B@1"));
+
+        assertEquals(Set.of("java:A@2", "java:B@1"), store.get("key").keySet());
+    }
+
+    public void testPutKeepsResultsOfCurrentRulesWithSameId() {
+        store.put("key", Map.of("java:A@1", RESULT), Set.of("java:A@1", "java:A@2"));
+        store.put("key", Map.of("java:A@2", RESULT), Set.of("java:A@1", "java:A@2"));
+
+        assertEquals(Set.of("java:A@1", "java:A@2"), store.get("key").keySet());
+    }
+
+    public void testPutEvictsLeastRecentlyUsedOverBudget() {
+        // a key of 1M chars is estimated at 2MB, so the budget holds 31 of them
+        String longKey = "k".repeat(1024 * 1024);
+        store.put(longKey + 0, Map.of("java:A@1", RESULT), Set.of("java:A@1"));
+        store.put(longKey + 1, Map.of("java:A@1", RESULT), Set.of("java:A@1"));
+        store.get(longKey + 0); // used, so no longer the least recently used
+        for (int i = 2; i < 32; i++) {
+            store.put(longKey + i, Map.of("java:A@1", RESULT), Set.of("java:A@1"));
+        }
+
+        assertEmpty(store.get(longKey + 1).keySet());
+        assertNotEmpty(store.get(longKey + 0).keySet());
+        assertNotEmpty(store.get(longKey + 31).keySet());
+    }
+
+    public void testGetWithoutResults() {
+        assertEmpty(store.get("unknown").keySet());
+    }
+
+    public void testKeptResultIsTakenForFileAndRule() throws Exception {
+        Rule rule = PMDResultCollector.loadRuleSet("category/java/bestpractices.xml").getRuleByName("UnusedLocalVariable");
+        RuleViolation violation = createViolation(rule, FileId.fromPathLikeString("/src/A.java"));
+        store.put("key", Map.of("java:A@1", new PMDFileResult(List.of(violation), List.of(), List.of())), Set.of("java:A@1"));
+
+        FileId copy = FileId.fromPathLikeString("/src/Copy.java");
+        PMDFileResult result = store.get("key").get("java:A@1").toFileResult(rule, copy);
+
+        RuleViolation kept = result.violations().get(0);
+        assertSame(rule, kept.getRule());
+        assertEquals(copy, kept.getFileId());
+        assertEquals(violation.getDescription(), kept.getDescription());
+        assertEquals(3, kept.getBeginLine());
+        assertEquals(5, kept.getBeginColumn());
+        assertEquals(3, kept.getEndLine());
+        assertEquals(9, kept.getEndColumn());
+        assertEquals("p", kept.getAdditionalInfo().get(RuleViolation.PACKAGE_NAME));
+    }
+
+    public void testSavedResultsAreLoadedByNewStore() throws Exception {
+        Rule rule = PMDResultCollector.loadRuleSet("category/java/bestpractices.xml").getRuleByName("UnusedLocalVariable");
+        RuleViolation violation = createViolation(rule, FileId.fromPathLikeString("/src/A.java"));
+        Report.SuppressedViolation suppressed = new Report.SuppressedViolation(violation,
+                ViolationSuppressor.NOPMD_COMMENT_SUPPRESSOR, "reason");
+        store.put("key", Map.of("java:A@1", new PMDFileResult(List.of(violation), List.of(suppressed), List.of())), Set.of("java:A@1"));
+        store.save();
+
+        PMDScanResultStore newStore = new PMDScanResultStore(getProject());
+        Disposer.register(getTestRootDisposable(), newStore);
+        PMDFileResult result = newStore.get("key").get("java:A@1").toFileResult(rule, violation.getFileId());
+
+        assertEquals(violation.getDescription(), result.violations().get(0).getDescription());
+        Report.SuppressedViolation keptSuppressed = result.suppressedViolations().get(0);
+        assertSame(ViolationSuppressor.NOPMD_COMMENT_SUPPRESSOR, keptSuppressed.getSuppressor());
+        assertEquals("reason", keptSuppressed.getUserMessage());
+    }
+
+    public void testClearDropsSavedResults() {
+        store.put("key", Map.of("java:A@1", RESULT), Set.of("java:A@1"));
+        store.save();
+
+        store.clear();
+
+        PMDScanResultStore newStore = new PMDScanResultStore(getProject());
+        Disposer.register(getTestRootDisposable(), newStore);
+        assertEmpty(newStore.get("key").keySet());
+    }
+
+    private static RuleViolation createViolation(Rule rule, FileId fileId) {
+        return new RuleViolation() {
+            @Override
+            public Rule getRule() {
+                return rule;
+            }
+
+            @Override
+            public String getDescription() {
+                return "Avoid unused local variables such as 'i'.";
+            }
+
+            @Override
+            public FileLocation getLocation() {
+                return FileLocation.range(fileId, TextRange2d.range2d(3, 5, 3, 9));
+            }
+
+            @Override
+            public Map<String, String> getAdditionalInfo() {
+                return Map.of(RuleViolation.PACKAGE_NAME, "p");
+            }
+        };
+    }
+}
@@ -0,0 +1,165 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class PMDScanSchedulerTest extends BasePlatformTestCase {
+
+    private static final int OPEN = 0;
+    private static final int VCS_CHANGED = 2;
+    private static final int OTHER = 4;
+
+    public void testNoBatchesWithoutFiles() {
+        assertEmpty(PMDScanScheduler.planBatches(List.of(), file -> OTHER, 10, 1000));
+    }
+
+    public void testSingleBatchWithinLimits() {
+        List<VirtualFile> files = createFiles(5, 10);
+
+        List<PMDScanScheduler.Batch> batches = PMDScanScheduler.planBatches(files, file -> OTHER, 10, 1000);
+
+        assertEquals(1, batches.size());
+        assertEquals(files, batches.get(0).files());
+        assertEquals("", batches.get(0).cacheId());
+    }
+
+    public void testBatchCountIsPowerOfTwo() {
+        assertEquals(1, PMDScanScheduler.getBatchCount(createFiles(10, 10), 10, 1000));
+        assertEquals(4, PMDScanScheduler.getBatchCount(createFiles(10, 10), 3, 1000));
+        assertEquals(4, PMDScanScheduler.getBatchCount(createFiles(4, 100), 10, 150));
+        assertEquals(1, PMDScanScheduler.getBatchCount(createFiles(1, 100), 10, 10));
+    }
+
+    public void testEachFileInOneBatchWithinLimits() {
+        List<VirtualFile> files = createFiles(100, 10);
+
+        List<PMDScanScheduler.Batch> batches = PMDScanScheduler.planBatches(files, file -> OTHER, 10, 1000);
+
+        List<VirtualFile> batchedFiles = new ArrayList<>();
+        Set<String> cacheIds = new HashSet<>();
+        for (PMDScanScheduler.Batch batch : batches) {
+            assertTrue(batch.files().size() <= 10);
+            assertTrue(cacheIds.add(batch.cacheId()));
+            batchedFiles.addAll(batch.files());
+        }
+        assertSameElements(batchedFiles, files);
+        assertEquals(files.size(), batchedFiles.size());
+    }
+
+    public void testBatchOfFileDoesNotDependOnFileOrder() {
+        List<VirtualFile> files = createFiles(100, 10);
+        List<VirtualFile> shuffled = new ArrayList<>(files);
+        Collections.shuffle(shuffled, new Random(42));
+
+        assertEquals(getCacheIds(PMDScanScheduler.planBatches(files, file -> OTHER, 10, 1000)),
+                getCacheIds(PMDScanScheduler.planBatches(shuffled, file -> OTHER, 10, 1000)));
+    }
+
+    public void testBatchOfFileIsKeptWhenFileIsAdded() {
+        List<VirtualFile> files = createFiles(100, 10);
+        List<VirtualFile> moreFiles = new ArrayList<>(files);
+        moreFiles.add(new LightVirtualFile("Added.java", "x".repeat(10)));
+
+        Map<VirtualFile, String> before = getCacheIds(PMDScanScheduler.planBatches(files, file -> OTHER, 10, 1000));
+        Map<VirtualFile, String> after = getCacheIds(PMDScanScheduler.planBatches(moreFiles, file -> OTHER, 10, 1000));
+
+        for (VirtualFile file : files) {
+            assertEquals(getBucket(before.get(file)), getBucket(after.get(file)));
+        }
+    }
+
+    public void testPrioritizedFilesInLeadingBatch() {
+        List<VirtualFile> files = createFiles(100, 10);
+        VirtualFile openFile = files.get(57);
+
+        List<PMDScanScheduler.Batch> batches = PMDScanScheduler.planBatches(files, file -> file == openFile ? OPEN : OTHER, 10, 1000);
+
+        assertEquals(List.of(openFile), batches.get(0).files());
+        assertNull(batches.get(0).cacheId());
+        for (PMDScanScheduler.Batch batch : batches.subList(1, batches.size())) {
+            assertFalse(batch.files().contains(openFile));
+            assertNotNull(batch.cacheId());
+        }
+    }
+
+    public void testPrioritizedFilesInLeadingBatchOfSingleBatchScan() {
+        List<VirtualFile> files = createFiles(5, 10);
+        VirtualFile changedFile = files.get(3);
+
+        List<PMDScanScheduler.Batch> batches = PMDScanScheduler.planBatches(files, file -> file == changedFile ? VCS_CHANGED : OTHER, 10, 1000);
+
+        assertEquals(2, batches.size());
+        assertEquals(List.of(changedFile), batches.get(0).files());
+        assertEquals(4, batches.get(1).files().size());
+        assertEquals("", batches.get(1).cacheId());
+    }
+
+    public void testLeadingBatchesOrderedByTier() {
+        List<VirtualFile> files = createFiles(10, 10);
+        VirtualFile openFile = files.get(9);
+        VirtualFile changedFile = files.get(0);
+
+        List<PMDScanScheduler.Batch> batches = PMDScanScheduler.planBatches(files,
+                file -> file == openFile ? OPEN : file == changedFile ? VCS_CHANGED : OTHER, 1, 1000);
+
+        assertEquals(List.of(openFile), batches.get(0).files());
+        assertEquals(List.of(changedFile), batches.get(1).files());
+    }
+
+    public void testNoLeadingBatchWhenAllFilesPrioritized() {
+        List<VirtualFile> files = createFiles(5, 10);
+
+        List<PMDScanScheduler.Batch> batches = PMDScanScheduler.planBatches(files, file -> OPEN, 10, 1000);
+
+        assertEquals(1, batches.size());
+        assertEquals("", batches.get(0).cacheId());
+    }
+
+    public void testSplitIntoBatches() {
+        VirtualFile a = new LightVirtualFile("A.java", "x".repeat(10));
+        VirtualFile b = new LightVirtualFile("B.java", "x".repeat(10));
+        VirtualFile c = new LightVirtualFile("C.java", "x".repeat(10));
+        VirtualFile large = new LightVirtualFile("Large.java", "x".repeat(50));
+        VirtualFile d = new LightVirtualFile("D.java", "x".repeat(10));
+
+        List<List<VirtualFile>> batches = PMDScanScheduler.splitIntoBatches(List.of(a, b, c, large, d), 2, 30);
+
+        assertEquals(List.of(List.of(a, b), List.of(c), List.of(large), List.of(d)), batches);
+    }
+
+    private static List<VirtualFile> createFiles(int count, int length) {
+        List<VirtualFile> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            files.add(new LightVirtualFile("File" + i + ".java", "x".repeat(length)));
+        }
+        return files;
+    }
+
+    private static Map<VirtualFile, String> getCacheIds(List<PMDScanScheduler.Batch> batches) {
+        Map<VirtualFile, String> fileToCacheId = new HashMap<>();
+        for (PMDScanScheduler.Batch batch : batches) {
+            for (VirtualFile file : batch.files()) {
+                fileToCacheId.put(file, batch.cacheId());
+            }
+        }
+        return fileToCacheId;
+    }
+
+    /**
+     * Returns the hash bucket of a cache id "i/n" or "i.j/n": "i/n".
+     */
+    private static String getBucket(String cacheId) {
+        int dot = cacheId.indexOf('.');
+        return (dot < 0) ? cacheId : cacheId.substring(0, dot) + cacheId.substring(cacheId.indexOf('/'));
+    }
+}
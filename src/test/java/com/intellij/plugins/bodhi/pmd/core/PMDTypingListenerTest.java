@@ -0,0 +1,27 @@
+package com.intellij.plugins.bodhi.pmd.core;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+
+public class PMDTypingListenerTest extends BasePlatformTestCase {
+
+    public void testChangeInEditorIsTyping() {
+        myFixture.configureByText("A.java", "class A {}");
+        long before = System.currentTimeMillis();
+
+        myFixture.type("x");
+
+        assertTrue(PMDTypingListener.getLastTypingMs() >= before);
+    }
+
+    public void testChangeWithoutEditorIsNotTyping() {
+        Document document = EditorFactory.getInstance().createDocument("class A {}");
+        long lastTypingMs = PMDTypingListener.getLastTypingMs();
+
+        WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "x"));
+
+        assertEquals(lastTypingMs, PMDTypingListener.getLastTypingMs());
+    }
+}